@@ -54,6 +54,7 @@ class MainActivity : ComponentActivity() {
         val chkRepeat = findViewById<CheckBox>(R.id.chkRepeat)
         val edtRepeatCount = findViewById<EditText>(R.id.edtRepeatCount)
         val edtRepeatDelay = findViewById<EditText>(R.id.edtRepeatDelay)
+        val edtCaptureScale = findViewById<EditText>(R.id.edtCaptureScale)
         val edtSleepMs = findViewById<EditText>(R.id.edtSleepMs)
         val btnAddSleep = findViewById<Button>(R.id.btnAddSleep)
         val edtWaitText = findViewById<EditText>(R.id.edtWaitText)
@@ -83,6 +84,7 @@ class MainActivity : ComponentActivity() {
         chkRepeat.isChecked = data.Prefs.isRepeatEnabled(this)
         edtRepeatCount.setText(data.Prefs.getRepeatCount(this).toString())
         edtRepeatDelay.setText(data.Prefs.getRepeatDelay(this).toString())
+        edtCaptureScale.setText(data.Prefs.getCaptureScale(this).toString())
 
         btnOpenAccessibility.setOnClickListener {
             startActivity(Intent(Settings.ACTION_ACCESSIBILITY_SETTINGS))
@@ -103,6 +105,7 @@ class MainActivity : ComponentActivity() {
             data.Prefs.setRepeatEnabled(this, chkRepeat.isChecked)
             data.Prefs.setRepeatCount(this, edtRepeatCount.text.toString().toIntOrNull() ?: 0)
             data.Prefs.setRepeatDelay(this, edtRepeatDelay.text.toString().toLongOrNull() ?: 500)
+            data.Prefs.setCaptureScale(this, edtCaptureScale.text.toString().toFloatOrNull() ?: 1f)
             val launchIntent = packageManager.getLaunchIntentForPackage(vm.targetPackage)
             if (launchIntent != null) {
                 startActivity(launchIntent)
@@ -0,0 +1,87 @@
+package com.example.autopilot.capture
+
+import android.graphics.Bitmap
+import com.automation.helper.matcher.PixelBuffer
+import java.util.concurrent.atomic.AtomicInteger
+
+// One captured screen, lent out by FramePool. Every holder calls release() once done (retain() for an
+// extra holder) and does not touch it afterwards: the last release hands it to the next capture.
+class Frame internal constructor(
+    // Holds the capture as the ImageReader delivered it, so it may be wider than width (row padding)
+    val bitmap: Bitmap,
+    val width: Int,
+    val height: Int,
+    private val pool: FramePool
+) {
+    // Position in the capture stream, increasing by one per frame the display produced
+    var sequence = 0L
+        internal set
+    // ImageReader timestamp in nanoseconds; only differences between frames are meaningful
+    var timestampNanos = 0L
+        internal set
+    // Frame pixels per screen pixel: below 1 when capture runs at reduced resolution, so a position
+    // found in the frame is divided by it before it is tapped
+    var scale = 1f
+        internal set
+
+    private val refs = AtomicInteger(1)
+    private var argb: IntArray? = null
+    private var converted = false
+
+    // ARGB pixels for the matcher; converted once per capture into an array kept with the frame
+    @Synchronized
+    fun pixels(): PixelBuffer {
+        val pix = argb ?: IntArray(width * height).also { argb = it }
+        if (!converted) {
+            bitmap.getPixels(pix, 0, width, 0, 0, width, height)
+            converted = true
+        }
+        return PixelBuffer(width, height, pix)
+    }
+
+    fun retain(): Frame {
+        refs.incrementAndGet()
+        return this
+    }
+
+    fun release() {
+        if (refs.decrementAndGet() == 0) pool.release(this)
+    }
+
+    internal fun fits(bitmapWidth: Int, width: Int, height: Int) =
+        bitmap.width == bitmapWidth && this.width == width && this.height == height && !bitmap.isRecycled
+
+    @Synchronized
+    internal fun reuse() {
+        converted = false
+        refs.set(1)
+    }
+}
+
+// Bitmaps of recent frames kept for reuse, so steady-state capture allocates nothing
+internal class FramePool(private val capacity: Int) {
+    private val free = ArrayDeque<Frame>()
+
+    @Synchronized
+    fun acquire(bitmapWidth: Int, width: Int, height: Int): Frame {
+        while (free.isNotEmpty()) {
+            val frame = free.removeFirst()
+            if (frame.fits(bitmapWidth, width, height)) return frame.also { it.reuse() }
+            // Display size or stride changed (e.g. rotation)
+            frame.bitmap.recycle()
+        }
+        return Frame(Bitmap.createBitmap(bitmapWidth, height, Bitmap.Config.ARGB_8888), width, height, this)
+    }
+
+    @Synchronized
+    fun release(frame: Frame) {
+        if (free.any { it === frame }) return // released twice
+        if (free.size < capacity) free.addLast(frame) else frame.bitmap.recycle()
+    }
+
+    @Synchronized
+    fun clear() {
+        free.forEach { it.bitmap.recycle() }
+        free.clear()
+    }
+}
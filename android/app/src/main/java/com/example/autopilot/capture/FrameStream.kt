@@ -0,0 +1,148 @@
+package com.example.autopilot.capture
+
+import android.media.ImageReader
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.SystemClock
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+// Frames pushed by the ImageReader as the display produces them, copied on a capture thread of their own
+// into a ring of the newest few. Consumers ask for "the newest frame after sequence N" and are called
+// back as soon as there is one; a slow consumer skips the frames it missed instead of working through a
+// queue of stale ones. The display only produces frames when something on screen changes, so the last
+// frame stays valid for as long as nothing new arrives.
+class FrameStream internal constructor(private val pool: FramePool, ringSize: Int, private val scale: Float) : ImageReader.OnImageAvailableListener {
+    private val thread = HandlerThread("ap-capture").apply { start() }
+    // Where onImageAvailable runs; pass to ImageReader.setOnImageAvailableListener
+    val handler = Handler(thread.looper)
+
+    private val lock = ReentrantLock()
+    // Signalled on every new frame and on stop, for awaitAfter
+    private val changed = lock.newCondition()
+    private val ring = arrayOfNulls<Frame>(ringSize)
+    private var sequence = 0L
+    private val waiters = ArrayList<Waiter>()
+    private var stopped = false
+    // For planes that leave out the last row's padding; copyPixelsFromBuffer needs whole rows
+    private var staging: ByteBuffer? = null
+
+    private class Waiter(val after: Long, val handler: Handler, val callback: (Frame?) -> Unit) {
+        var done = false
+        lateinit var timeout: Runnable
+    }
+
+    override fun onImageAvailable(reader: ImageReader) {
+        // Anything older still queued in the reader is skipped
+        val img = try { reader.acquireLatestImage() } catch (_: IllegalStateException) { null } ?: return
+        val frame = try {
+            val p = img.planes[0]
+            // RGBA_8888 rows are laid out exactly like an ARGB_8888 bitmap's memory, padding included,
+            // so a bitmap as wide as the row stride takes the plane as one copy
+            val frame = pool.acquire(p.rowStride / p.pixelStride, img.width, img.height)
+            val buf: ByteBuffer = p.buffer
+            val needed = p.rowStride * img.height
+            if (buf.remaining() >= needed) {
+                frame.bitmap.copyPixelsFromBuffer(buf)
+            } else {
+                val whole = staging?.takeIf { it.capacity() == needed } ?: ByteBuffer.allocateDirect(needed).also { staging = it }
+                whole.clear()
+                whole.put(buf)
+                whole.rewind()
+                frame.bitmap.copyPixelsFromBuffer(whole)
+            }
+            frame.timestampNanos = img.timestamp
+            frame.scale = scale
+            frame
+        } finally {
+            img.close()
+        }
+        publish(frame)
+    }
+
+    private fun publish(frame: Frame) {
+        val ready: List<Waiter>
+        lock.withLock {
+            if (stopped) { frame.release(); return }
+            frame.sequence = ++sequence
+            val slot = (frame.sequence % ring.size).toInt()
+            ring[slot]?.release()
+            ring[slot] = frame
+            ready = waiters.filter { it.after < frame.sequence }
+            waiters.removeAll(ready)
+            // One reference per waiter, taken before a later frame can push this one out of the ring
+            ready.forEach { it.done = true; frame.retain() }
+            changed.signalAll()
+        }
+        for (w in ready) {
+            w.handler.removeCallbacks(w.timeout)
+            w.handler.post { w.callback(frame) }
+        }
+    }
+
+    // Sequence of the newest frame, 0 before the first
+    val latestSequence: Long
+        get() = lock.withLock { sequence }
+
+    // Newest frame with a sequence above after, retained for the caller; null if there is none yet
+    fun latestAfter(after: Long): Frame? = lock.withLock {
+        if (sequence > after && sequence > 0) ring[(sequence % ring.size).toInt()]?.retain() else null
+    }
+
+    // A frame still in the ring by its sequence, retained for the caller; null once it was overwritten
+    fun frame(sequence: Long): Frame? = lock.withLock {
+        ring[(sequence % ring.size).toInt()]?.takeIf { it.sequence == sequence }?.retain()
+    }
+
+    // Calls back on handler with the newest frame after sequence after as soon as there is one, or with
+    // null once timeoutMs pass without one or the stream stops. The callback releases the frame.
+    fun nextAfter(after: Long, timeoutMs: Long, handler: Handler, callback: (Frame?) -> Unit) {
+        val waiter = Waiter(after, handler, callback)
+        lock.withLock {
+            val ready = if (stopped) null else latestAfter(after)
+            if (ready != null || stopped) {
+                handler.post { callback(ready) }
+                return
+            }
+            waiter.timeout = Runnable {
+                val expired = lock.withLock { if (waiter.done) false else { waiter.done = true; waiters.remove(waiter) } }
+                if (expired) callback(null)
+            }
+            waiters.add(waiter)
+        }
+        // A frame published in between finds the waiter done, and this does nothing
+        handler.postDelayed(waiter.timeout, timeoutMs)
+    }
+
+    // Blocking form of nextAfter for worker threads; never call it on the capture thread
+    fun awaitAfter(after: Long, timeoutMs: Long): Frame? {
+        val deadline = SystemClock.uptimeMillis() + timeoutMs
+        lock.withLock {
+            while (true) {
+                latestAfter(after)?.let { return it }
+                val left = deadline - SystemClock.uptimeMillis()
+                if (stopped || left <= 0) return null
+                changed.await(left, TimeUnit.MILLISECONDS)
+            }
+        }
+    }
+
+    fun stop() {
+        val pending: List<Waiter>
+        lock.withLock {
+            stopped = true
+            ring.forEachIndexed { i, f -> f?.release(); ring[i] = null }
+            pending = waiters.toList()
+            waiters.clear()
+            pending.forEach { it.done = true }
+            changed.signalAll()
+        }
+        for (w in pending) {
+            w.handler.removeCallbacks(w.timeout)
+            w.handler.post { w.callback(null) }
+        }
+        thread.quitSafely()
+    }
+}
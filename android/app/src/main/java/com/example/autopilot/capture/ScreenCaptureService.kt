@@ -2,7 +2,6 @@ package com.example.autopilot.capture
 
 import android.app.Service
 import android.content.Intent
-import android.graphics.Bitmap
 import android.graphics.PixelFormat
 import android.hardware.display.DisplayManager
 import android.hardware.display.MediaProjection
@@ -10,12 +9,15 @@ import android.hardware.display.MediaProjectionManager
 import android.media.ImageReader
 import android.os.IBinder
 import android.view.WindowManager
-import java.nio.ByteBuffer
+import com.example.autopilot.data.Prefs
+import kotlin.math.roundToInt
 
 class ScreenCaptureService : Service() {
     private var projection: MediaProjection? = null
     private var imageReader: ImageReader? = null
     private var vd: android.hardware.display.VirtualDisplay? = null
+    private val pool = FramePool(POOL_SIZE)
+    private var stream: FrameStream? = null
 
     override fun onBind(intent: Intent?): IBinder? = null
 
@@ -26,9 +28,17 @@ class ScreenCaptureService : Service() {
             val data: Intent? = intent.getParcelableExtra(EXTRA_DATA)
             projection = mgr.getMediaProjection(resultCode, data!!)
             val dm = resources.displayMetrics
-            imageReader = ImageReader.newInstance(dm.widthPixels, dm.heightPixels, PixelFormat.RGBA_8888, 2)
+            // The compositor scales while mirroring, so a reduced capture costs less at every stage after it
+            val scale = Prefs.getCaptureScale(this)
+            val width = (dm.widthPixels * scale).roundToInt().coerceAtLeast(1)
+            val height = (dm.heightPixels * scale).roundToInt().coerceAtLeast(1)
+            imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, 2)
+            // The exact ratio, since both sides were rounded: the mean of the two axes, so neither
+            // is off by more than half a capture pixel across the screen
+            val ratio = (width.toFloat() / dm.widthPixels + height.toFloat() / dm.heightPixels) / 2
+            stream = FrameStream(pool, RING_SIZE, ratio).also { imageReader!!.setOnImageAvailableListener(it, it.handler) }
             vd = projection!!.createVirtualDisplay(
-                "ap-cap", dm.widthPixels, dm.heightPixels, dm.densityDpi,
+                "ap-cap", width, height, (dm.densityDpi * scale).roundToInt().coerceAtLeast(1),
                 DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
                 imageReader!!.surface, null, null
             )
@@ -39,42 +49,18 @@ class ScreenCaptureService : Service() {
         return START_STICKY
     }
 
-    fun capture(): Bitmap? {
-        val img = imageReader?.acquireLatestImage() ?: return null
-        val p = img.planes[0]
-        val buf: ByteBuffer = p.buffer
-        val pixelStride = p.pixelStride
-        val rowStride = p.rowStride
-        val width = img.width
-        val height = img.height
-        val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
-        // Efficient copy respecting rowStride
-        val rowBuffer = ByteArray(rowStride)
-        for (y in 0 until height) {
-            buf.position(y * rowStride)
-            buf.get(rowBuffer, 0, rowStride)
-            var xPixel = 0
-            var idx = 0
-            while (xPixel < width) {
-                val b = rowBuffer[idx].toInt() and 0xFF
-                val g = rowBuffer[idx + 1].toInt() and 0xFF
-                val r = rowBuffer[idx + 2].toInt() and 0xFF
-                val a = if (pixelStride >= 4) rowBuffer[idx + 3].toInt() and 0xFF else 0xFF
-                val color = (a shl 24) or (r shl 16) or (g shl 8) or b
-                bitmap.setPixel(xPixel, y, color)
-                xPixel += 1
-                idx += pixelStride
-            }
-        }
-        img.close()
-        return bitmap
-    }
+    // Newest screen the display produced, retained for the caller, who must release() it;
+    // null before the first frame
+    fun capture(): Frame? = stream?.latestAfter(0)
 
     override fun onDestroy() {
         super.onDestroy()
         vd?.release(); vd = null
+        imageReader?.setOnImageAvailableListener(null, null)
+        stream?.stop(); stream = null
         imageReader?.close(); imageReader = null
         projection?.stop(); projection = null
+        pool.clear()
         if (instance === this) instance = null
     }
 
@@ -83,10 +69,17 @@ class ScreenCaptureService : Service() {
         const val ACTION_STOP = "cap.STOP"
         const val EXTRA_CODE = "code"
         const val EXTRA_DATA = "data"
+        // Newest frames kept by the stream
+        private const val RING_SIZE = 3
+        // Frames the ring and its consumers may hold at once before capture allocates again
+        private const val POOL_SIZE = RING_SIZE + 3
 
         @Volatile
         var instance: ScreenCaptureService? = null
 
-        fun captureLatest(): Bitmap? = instance?.capture()
+        fun captureLatest(): Frame? = instance?.capture()
+
+        // Null while capture is not running
+        val frames: FrameStream? get() = instance?.stream
     }
 }
@@ -2,6 +2,7 @@ package com.example.autopilot.data
 
 import android.content.Context
 import android.content.SharedPreferences
+import kotlin.math.abs
 
 object Prefs {
     private const val FILE = "autopilot.prefs"
@@ -10,6 +11,7 @@ object Prefs {
     private const val KEY_REPEAT_ENABLED = "repeat_enabled"
     private const val KEY_REPEAT_COUNT = "repeat_count" // 0 = infinite
     private const val KEY_REPEAT_DELAY = "repeat_delay_ms"
+    private const val KEY_CAPTURE_SCALE = "capture_scale"
 
     private fun sp(ctx: Context): SharedPreferences =
         ctx.applicationContext.getSharedPreferences(FILE, Context.MODE_PRIVATE)
@@ -31,6 +33,19 @@ object Prefs {
     fun setRepeatDelay(ctx: Context, ms: Long) { sp(ctx).edit().putLong(KEY_REPEAT_DELAY, ms).apply() }
     fun getRepeatDelay(ctx: Context): Long = sp(ctx).getLong(KEY_REPEAT_DELAY, 500)
 
+    // Capture resolution relative to the screen: 1, 0.5 or 0.25. Applies from the next capture start;
+    // at 0.25 small templates shrink to a few pixels and may no longer be found
+    private val CAPTURE_SCALES = floatArrayOf(1f, 0.5f, 0.25f)
+
+    // Other values snap to the nearest allowed one: e.g. 0.33 would give odd ImageReader sizes
+    // and a ratio that rounds differently on each axis when mapped back to the screen
+    fun setCaptureScale(ctx: Context, scale: Float) {
+        sp(ctx).edit().putFloat(KEY_CAPTURE_SCALE, snapCaptureScale(scale)).apply()
+    }
+    fun getCaptureScale(ctx: Context): Float = snapCaptureScale(sp(ctx).getFloat(KEY_CAPTURE_SCALE, 1f))
+
+    private fun snapCaptureScale(scale: Float): Float = CAPTURE_SCALES.minByOrNull { abs(it - scale) } ?: 1f
+
     // Scenario JSON storage per package
     private fun scenarioKey(pkg: String) = "scenario:$pkg"
 
@@ -38,4 +53,13 @@ object Prefs {
         sp(ctx).edit().putString(scenarioKey(pkg), json).apply()
     }
     fun loadScenario(ctx: Context, pkg: String): String? = sp(ctx).getString(scenarioKey(pkg), null)
+
+    // Where each template of the package's scenario was last found, as JSON;
+    // kept apart from the scenario so a run never rewrites the steps
+    private fun templateHitsKey(pkg: String) = "template_hits:$pkg"
+
+    fun saveTemplateHits(ctx: Context, pkg: String, json: String) {
+        sp(ctx).edit().putString(templateHitsKey(pkg), json).apply()
+    }
+    fun loadTemplateHits(ctx: Context, pkg: String): String? = sp(ctx).getString(templateHitsKey(pkg), null)
 }
@@ -6,9 +6,12 @@ import android.graphics.Path
 import android.view.accessibility.AccessibilityEvent
 import android.view.accessibility.AccessibilityNodeInfo
 import android.content.Intent
+import android.graphics.Point
 import android.graphics.Rect
 import android.os.Handler
+import android.os.HandlerThread
 import android.os.Looper
+import android.os.SystemClock
 import com.example.autopilot.data.Prefs
 import org.json.JSONArray
 import org.json.JSONObject
@@ -19,7 +22,13 @@ import android.graphics.Color
 import android.view.View
 import android.graphics.Bitmap
 import android.util.Base64
+import com.example.autopilot.capture.FrameStream
 import com.example.autopilot.capture.ScreenCaptureService
+import com.automation.helper.matcher.CompiledTemplate
+import com.automation.helper.matcher.MatchCache
+import com.automation.helper.matcher.MatchMode
+import com.automation.helper.matcher.MatchOptions
+import com.automation.helper.matcher.PixelBuffer
 
 class AutoPilotService : AccessibilityService() {
 
@@ -31,15 +40,33 @@ class AutoPilotService : AccessibilityService() {
         data class Swipe(val x1: Int, val y1: Int, val x2: Int, val y2: Int, val dur: Long): Step()
         data class ScrollUntilText(val text: String, val max: Int, val down: Boolean): Step()
         data class FindImageLabel(val label: String): Step()
-        data class Template(val imgBase64: String, val th: Float): Step()
+        data class Template(val imgBase64: String, val th: Float): Step() {
+            // Decoded and compiled on first run, then reused by every repeat
+            var compiled: CompiledTemplate? = null
+            // Top-left of the last match, searched first next time
+            var lastHit: Point? = null
+        }
     }
 
     private val steps = mutableListOf<Step>()
     private var recording = false
     private var running = false
     private var currentIndex = 0
+    // ACTION_STEP plays one step; a template step it started ends it once its wait is over
+    private var singleStep = false
+    private var templateWaiting = false
     private val handler = Handler(Looper.getMainLooper())
+    // Template searches run here, never on the main thread; only taps and step changes are posted back
+    private val matchThread = HandlerThread("ap-match").apply { start() }
+    private val matchHandler = Handler(matchThread.looper)
     private var repeatRemaining: Int = 0 // 0 = infinite when repeat enabled
+    // Template scale found by the first hit of a run; later steps skip the sweep. Set on the match thread
+    @Volatile
+    private var lockedScale: Double? = null
+    private var hitsChanged = false
+    // Polling a template on an unchanged screen reuses the last outcome; only changed tiles are rescanned.
+    // Match thread only
+    private val matchCache = MatchCache()
     private var wm: WindowManager? = null
     private var tipView: TextView? = null
 
@@ -62,6 +89,11 @@ class AutoPilotService : AccessibilityService() {
 
     override fun onInterrupt() {}
 
+    override fun onDestroy() {
+        super.onDestroy()
+        matchThread.quitSafely()
+    }
+
     private fun buildSelector(node: AccessibilityNodeInfo): String? {
         val id = node.viewIdResourceName
         val text = node.text?.toString()
@@ -226,14 +258,48 @@ class AutoPilotService : AccessibilityService() {
             }
             is Step.Template -> {
                 showTip("이미지 템플릿", null)
-                val screenBmp = ScreenCaptureService.captureLatest() ?: return false
-                val templ = decodeBase64Png(step.imgBase64) ?: return false
-                val found = findTemplate(screenBmp, templ, step.th)
-                if (found != null) { tapRect(found); true } else false
+                val templ = step.compiled ?: compileTemplate(step.imgBase64)?.also { step.compiled = it } ?: return false
+                val frames = ScreenCaptureService.frames ?: return false
+                templateWaiting = true
+                awaitTemplate(step, templ, frames, 0L, SystemClock.uptimeMillis() + TEMPLATE_TIMEOUT_MS)
+                false
+            }
+        }
+    }
+
+    // Searches the newest frame after sequence `after`, then each time the screen changes, until the
+    // template shows up or the deadline passes; either way the scenario moves on, like wait_text
+    private fun awaitTemplate(step: Step.Template, templ: CompiledTemplate, frames: FrameStream, after: Long, deadline: Long) {
+        val hint = step.lastHit
+        frames.nextAfter(after, (deadline - SystemClock.uptimeMillis()).coerceAtLeast(0L), matchHandler) { frame ->
+            // On the match thread
+            val seen = frame?.sequence
+            val found = frame?.let { f ->
+                try { findTemplate(f.pixels(), f.scale.toDouble(), templ, step.th, hint) } finally { f.release() }
+            }
+            handler.post {
+                if (!running) { templateWaiting = false; return@post }
+                when {
+                    seen == null -> { hideTip(); finishTemplateStep(0) }
+                    found == null -> awaitTemplate(step, templ, frames, seen, deadline)
+                    else -> {
+                        if (step.lastHit?.x != found.left || step.lastHit?.y != found.top) {
+                            step.lastHit = Point(found.left, found.top); hitsChanged = true
+                        }
+                        tapRect(found)
+                        finishTemplateStep(250)
+                    }
+                }
             }
         }
     }
 
+    private fun finishTemplateStep(nextDelayMs: Long) {
+        templateWaiting = false
+        currentIndex += 1
+        if (singleStep) { singleStep = false; running = false } else handler.postDelayed({ stepNext() }, nextDelayMs)
+    }
+
     private fun waitForText(text: String, timeoutMs: Long, onDone: () -> Unit){
         val start = System.currentTimeMillis()
         fun tick(){
@@ -249,6 +315,7 @@ class AutoPilotService : AccessibilityService() {
     private fun stepNext() {
         if (currentIndex >= steps.size) {
             // Scenario finished
+            if (hitsChanged) saveTemplateHits()
             val repeatEnabled = Prefs.isRepeatEnabled(this)
             if (repeatEnabled) {
                 val countPref = Prefs.getRepeatCount(this)
@@ -272,11 +339,18 @@ class AutoPilotService : AccessibilityService() {
         when (intent?.action) {
             ACTION_TOGGLE_RECORD -> recording = !recording
             ACTION_PLAY -> {
-                running = true; currentIndex = 0
+                running = true; currentIndex = 0; lockedScale = null
                 repeatRemaining = Prefs.getRepeatCount(this)
                 stepNext()
             }
-            ACTION_STEP -> { if (!running) { running = true; stepNext(); running = false } }
+            ACTION_STEP -> {
+                if (!running) {
+                    running = true; singleStep = true
+                    stepNext()
+                    // Otherwise the template wait clears both when it ends
+                    if (!templateWaiting) { singleStep = false; running = false }
+                }
+            }
             ACTION_CLEAR -> { steps.clear(); saveScenarioToPrefs() }
         }
         return START_STICKY
@@ -290,6 +364,11 @@ class AutoPilotService : AccessibilityService() {
         const val ACTION_IMPORT = "com.example.autopilot.IMPORT"
         const val ACTION_SET_PACKAGE = "com.example.autopilot.SET_PACKAGE"
         const val ACTION_LAUNCH = "com.example.autopilot.LAUNCH"
+        // Density range between the tablet models scenarios are shared across
+        private const val MIN_TEMPLATE_SCALE = 0.75
+        private const val MAX_TEMPLATE_SCALE = 1.5
+        // How long a template step waits for its template to appear on screen
+        private const val TEMPLATE_TIMEOUT_MS = 10_000L
     }
 
     private fun saveScenarioToPrefs(){
@@ -337,67 +416,59 @@ class AutoPilotService : AccessibilityService() {
                 }
             }
         } catch (_: Throwable) {}
+        loadTemplateHits()
     }
 
-    private fun decodeBase64Png(b64: String): Bitmap? = try { val bytes = Base64.decode(b64, Base64.DEFAULT); android.graphics.BitmapFactory.decodeByteArray(bytes,0,bytes.size) } catch (_:Throwable){ null }
-    private fun findTemplate(screen: Bitmap, templ: Bitmap, th: Float): Rect? {
-        // Simple grayscale NCC search with downscale for speed
-        val scale = 0.5f
-        val screenScaled = Bitmap.createScaledBitmap(screen, (screen.width * scale).toInt(), (screen.height * scale).toInt(), true)
-        val templScaled = Bitmap.createScaledBitmap(templ, (templ.width * scale).toInt().coerceAtLeast(1), (templ.height * scale).toInt().coerceAtLeast(1), true)
+    // Keyed by image content, so hits survive steps being reordered or re-imported
+    private fun templateKey(step: Step.Template) = Integer.toHexString(step.imgBase64.hashCode())
+
+    private fun saveTemplateHits(){
+        val obj = JSONObject()
+        steps.forEach { s ->
+            if (s is Step.Template) s.lastHit?.let { p -> obj.put(templateKey(s), JSONObject().apply { put("x", p.x); put("y", p.y) }) }
+        }
+        Prefs.saveTemplateHits(this, Prefs.getTargetPackage(this), obj.toString())
+        hitsChanged = false
+    }
 
-        val sw = screenScaled.width; val sh = screenScaled.height
-        val tw = templScaled.width; val thh = templScaled.height
-        if (tw <= 1 || thh <= 1 || sw < tw || sh < thh) return null
+    private fun loadTemplateHits(){
+        val raw = Prefs.loadTemplateHits(this, Prefs.getTargetPackage(this))
+        if (raw.isNullOrEmpty()) return
+        try {
+            val obj = JSONObject(raw)
+            steps.forEach { s ->
+                if (s is Step.Template) obj.optJSONObject(templateKey(s))?.let { p -> s.lastHit = Point(p.optInt("x"), p.optInt("y")) }
+            }
+        } catch (_: Throwable) {}
+    }
 
-        val sPix = IntArray(sw * sh); screenScaled.getPixels(sPix, 0, sw, 0, 0, sw, sh)
-        val tPix = IntArray(tw * thh); templScaled.getPixels(tPix, 0, tw, 0, 0, tw, thh)
+    private fun decodeBase64Png(b64: String): Bitmap? = try { val bytes = Base64.decode(b64, Base64.DEFAULT); android.graphics.BitmapFactory.decodeByteArray(bytes,0,bytes.size) } catch (_:Throwable){ null }
+    // Content-keyed cache, so a scenario reloaded from prefs finds its templates already compiled
+    private fun compileTemplate(b64: String): CompiledTemplate? {
+        val bmp = decodeBase64Png(b64) ?: return null
+        // A fully transparent image has nothing to compare; treated like one that fails to decode
+        return try { CompiledTemplate.of(bmp.toPixelBuffer()) } catch (_: IllegalArgumentException) { null }
+    }
 
-        fun gray(c:Int)= ((c shr 16 and 0xFF)*299 + (c shr 8 and 0xFF)*587 + (c and 0xFF)*114)/1000.0
-        val tMean = tPix.asSequence().map { gray(it) }.average()
-        val tVar = tPix.asSequence().map { val v=gray(it)-tMean; v*v }.sum()
-        if (tVar == 0.0) return null
+    private fun Bitmap.toPixelBuffer(): PixelBuffer {
+        val pix = IntArray(width * height)
+        getPixels(pix, 0, width, 0, 0, width, height)
+        return PixelBuffer(width, height, pix)
+    }
 
-        var best = -1.0
-        var bestX = 0; var bestY = 0
-        for (y in 0 .. sh - thh) {
-            for (x in 0 .. sw - tw) {
-                var sMean = 0.0
-                var n = 0
-                var idxS = y * sw + x
-                // mean
-                for (j in 0 until thh) {
-                    for (i in 0 until tw) { sMean += gray(sPix[idxS + i]); n += 1 }
-                    idxS += sw
-                }
-                sMean /= n
-                var sVar = 0.0
-                var num = 0.0
-                idxS = y * sw + x
-                var idxT = 0
-                for (j in 0 until thh) {
-                    for (i in 0 until tw) {
-                        val gs = gray(sPix[idxS + i]) - sMean
-                        val gt = gray(tPix[idxT]) - tMean
-                        num += gs * gt
-                        sVar += gs * gs
-                        idxT += 1
-                    }
-                    idxS += sw
-                }
-                val denom = Math.sqrt(sVar * tVar)
-                if (denom > 0) {
-                    val score = num / denom
-                    if (score > best) { best = score; bestX = x; bestY = y }
-                }
-            }
-        }
-        if (best < th) return null
-        val rx = (bestX / scale).toInt()
-        val ry = (bestY / scale).toInt()
-        val rw = (tw / scale).toInt()
-        val rh = (thh / scale).toInt()
-        return Rect(rx, ry, rx + rw, ry + rh)
+    // Match thread only. frameScale is frame pixels per screen pixel; scales, hint and the returned rect are in screen pixels
+    private fun findTemplate(frame: PixelBuffer, frameScale: Double, templ: CompiledTemplate, th: Float, lastHit: Point?): Rect? {
+        // Coarse-to-fine NCC on the frame as captured; same luma correlation as before, so thresholds carry over
+        val options = MatchOptions().mode(MatchMode.NCC).threshold(th.toDouble())
+        // Templates recorded on a tablet with another density come out scaled on this screen, and the
+        // capture may be reduced on top of that
+        lockedScale?.let { options.scale(it * frameScale) }
+            ?: options.scales(MIN_TEMPLATE_SCALE * frameScale, MAX_TEMPLATE_SCALE * frameScale)
+        // Buttons rarely move: a window around the last hit first, the whole screen on a miss
+        lastHit?.let { options.near((it.x * frameScale).toInt(), (it.y * frameScale).toInt()) }
+        val found = matchCache.findImage(frame, templ, options)?.scaledBy(1.0 / frameScale) ?: return null
+        lockedScale = found.scale
+        return Rect(found.x, found.y, found.x + found.width, found.y + found.height)
     }
 
     private fun scrollUntilText(text: String, max: Int, down: Boolean, onDone: () -> Unit){
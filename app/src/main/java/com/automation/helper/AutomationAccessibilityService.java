@@ -1,13 +1,16 @@
 package com.automation.helper;
 
 import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.AccessibilityServiceInfo;
 import android.accessibilityservice.GestureDescription;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Path;
 import android.graphics.PixelFormat;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Display;
 import android.view.WindowManager;
@@ -17,23 +20,130 @@ import android.media.ImageReader;
 import android.hardware.display.DisplayManager;
 import android.hardware.display.VirtualDisplay;
 
+import com.automation.helper.matcher.FrameGrid;
+import com.automation.helper.matcher.PixelBuffer;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public class AutomationAccessibilityService extends AccessibilityService {
     private static final String TAG = "AutomationService";
+    private static final long TAP_DURATION_MS = 100;
+    // Strokes of a TAPS task are short, so taps a few ms apart stay apart
+    private static final long BURST_TAP_MS = 20;
+    // A click that reports neither completion nor cancellation by then has failed
+    private static final long GESTURE_TIMEOUT_MS = 5000;
+    private static final long RETRY_DELAY_MS = 300;
+    // A launched app is ready once its window is up and its content has not
+    // changed for this long
+    private static final long LAUNCH_SETTLE_MS = 500;
+    // How often a WAIT_IDLE step compares frames, when a frame source is set
+    private static final long FRAME_POLL_MS = 100;
+    private static final int LAUNCH_EVENTS = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+            | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED;
+    private static final int UI_ACTIVITY_EVENTS = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+            | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED | AccessibilityEvent.TYPE_VIEW_SCROLLED;
     private static AutomationAccessibilityService instance;
+    // Gestures are dispatched from the service's main thread, as the framework expects
     private Handler handler = new Handler(Looper.getMainLooper());
-    private List<AutomationTask> taskQueue = new ArrayList<>();
+    // Task sequences run on a thread of their own, so a busy main thread
+    // (event callbacks, UI) does not push every step back
+    private HandlerThread runnerThread;
+    private Handler runner;
+    // Runner thread only
+    private final ArrayDeque<AutomationTask> taskQueue = new ArrayDeque<>();
+    // When the next task should start, and how late tasks started so far
+    private long nextDueAt;
+    private long lagTotal, lagMax;
+    private int lagCount;
+    // Identifies the step whose gesture is in flight; a result for any other
+    // id belongs to a step already timed out or a replaced sequence
+    private long stepId;
+    // Runner thread only: tags the delayed callbacks of the running sequence
+    private Object sequenceToken = new Object();
+    // When the gesture in flight was handed to dispatchGesture; set on the main thread
+    private volatile long gestureDispatchedAt;
+    private TaskSequenceListener sequenceListener;
+    // Who gets which events; iterated without locking for every event, and
+    // the union of what it asks for is all the system sends
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    // Runner thread only: the app the sequence launched last, whose events
+    // WAIT_IDLE watches (every app's when there is none), and the listeners
+    // of the step in flight
+    private String sequencePackage;
+    private EventListener launchListener;
+    private EventListener idleListener;
+    // Runner thread only: when the launch started, whether its window is up,
+    // and the pending settle check
+    private long launchStartedAt;
+    private boolean launchWindowShown;
+    private Runnable launchSettled;
+    // When the UI last changed during WAIT_IDLE; written by its event listener
+    // without posting anything
+    private volatile long lastActivityAt;
+    // Runner thread only: the optional frame-diff signal and what WAIT_IDLE
+    // steps of this sequence saved against their recorded delays
+    private FrameSource frameSource;
+    private FrameGrid lastGrid;
+    private long idleStartedAt;
+    private long idleSavedTotal;
 
     public static AutomationAccessibilityService getInstance() {
         return instance;
     }
 
+    // Runs for every event delivered, so nothing here builds strings
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
-        // Handle accessibility events if needed
-        Log.d(TAG, "Accessibility event: " + event.toString());
+        int type = event.getEventType();
+        CharSequence packageName = event.getPackageName();
+        for (Subscription subscription : subscriptions) {
+            if ((subscription.eventTypes & type) != 0 && (subscription.packageName == null
+                    || (packageName != null && subscription.packageName.contentEquals(packageName)))) {
+                subscription.listener.onAccessibilityEvent(event);
+            }
+        }
+    }
+
+    // Deliver events of the given types (AccessibilityEvent.TYPE_* bits)
+    // from packageName, or from every package if null, on the main thread
+    public void addEventListener(EventListener listener, int eventTypes, String packageName) {
+        subscriptions.add(new Subscription(listener, eventTypes, packageName));
+        handler.post(this::updateEventFilter);
+    }
+
+    public void removeEventListener(EventListener listener) {
+        subscriptions.removeIf(subscription -> subscription.listener == listener);
+        handler.post(this::updateEventFilter);
+    }
+
+    // Ask the system for only what the listeners want, so apps scrolling
+    // in the background do not wake this process for every frame
+    private void updateEventFilter() {
+        AccessibilityServiceInfo info = getServiceInfo();
+        if (info == null) {
+            return; // Not connected yet; onServiceConnected calls this again
+        }
+        int eventTypes = 0;
+        boolean everyPackage = false;
+        Set<String> packages = new HashSet<>();
+        for (Subscription subscription : subscriptions) {
+            eventTypes |= subscription.eventTypes;
+            if (subscription.packageName == null) {
+                everyPackage = true;
+            } else {
+                packages.add(subscription.packageName);
+            }
+        }
+        // With no listener, only window changes, which are rare (as in the XML)
+        info.eventTypes = eventTypes != 0 ? eventTypes : AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+        info.packageNames = everyPackage || packages.isEmpty() ? null : packages.toArray(new String[0]);
+        setServiceInfo(info);
     }
 
     @Override
@@ -41,10 +151,19 @@ public class AutomationAccessibilityService extends AccessibilityService {
         Log.d(TAG, "Service interrupted");
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        runnerThread = new HandlerThread("automation-runner");
+        runnerThread.start();
+        runner = new Handler(runnerThread.getLooper());
+    }
+
     @Override
     protected void onServiceConnected() {
         super.onServiceConnected();
         instance = this;
+        updateEventFilter();
         Log.d(TAG, "Accessibility service connected");
     }
 
@@ -52,23 +171,26 @@ public class AutomationAccessibilityService extends AccessibilityService {
     public void onDestroy() {
         super.onDestroy();
         instance = null;
+        runnerThread.quitSafely();
         Log.d(TAG, "Service destroyed");
     }
 
-    // Launch an app by package name
-    public void launchApp(String packageName) {
+    // Launch an app by package name; false if it could not be started
+    public boolean launchApp(String packageName) {
         try {
             Intent launchIntent = getPackageManager().getLaunchIntentForPackage(packageName);
             if (launchIntent != null) {
                 launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
                 startActivity(launchIntent);
                 Log.d(TAG, "Launched app: " + packageName);
+                return true;
             } else {
                 Log.e(TAG, "App not found: " + packageName);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error launching app: " + e.getMessage());
         }
+        return false;
     }
 
     // Click at specific coordinates
@@ -78,16 +200,7 @@ public class AutomationAccessibilityService extends AccessibilityService {
 
     public void clickAt(int x, int y, long delayMs) {
         handler.postDelayed(() -> {
-            Path clickPath = new Path();
-            clickPath.moveTo(x, y);
-
-            GestureDescription.StrokeDescription clickStroke =
-                    new GestureDescription.StrokeDescription(clickPath, 0, 100);
-
-            GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
-            gestureBuilder.addStroke(clickStroke);
-
-            dispatchGesture(gestureBuilder.build(), new GestureResultCallback() {
+            dispatchGesture(tap(x, y), new GestureResultCallback() {
                 @Override
                 public void onCompleted(GestureDescription gestureDescription) {
                     super.onCompleted(gestureDescription);
@@ -103,58 +216,412 @@ public class AutomationAccessibilityService extends AccessibilityService {
         }, delayMs);
     }
 
-    // Execute a sequence of automation tasks
+    private static GestureDescription tap(int x, int y) {
+        Path clickPath = new Path();
+        clickPath.moveTo(x, y);
+
+        GestureDescription.StrokeDescription clickStroke =
+                new GestureDescription.StrokeDescription(clickPath, 0, TAP_DURATION_MS);
+
+        GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
+        gestureBuilder.addStroke(clickStroke);
+        return gestureBuilder.build();
+    }
+
+    // Execute a sequence of automation tasks, replacing any sequence still running
     public void executeTaskSequence(List<AutomationTask> tasks) {
-        taskQueue.clear();
-        taskQueue.addAll(tasks);
-        executeNextTask();
+        executeTaskSequence(tasks, null);
+    }
+
+    // listener, if any, hears on the main thread how the sequence ended
+    public void executeTaskSequence(List<AutomationTask> tasks, TaskSequenceListener listener) {
+        List<AutomationTask> copy = new ArrayList<>(tasks);
+        runner.post(() -> {
+            // Steps still pending from the previous sequence, and its gesture results;
+            // anything else queued on the runner (a later sequence, a frame source) stays
+            runner.removeCallbacksAndMessages(sequenceToken);
+            sequenceToken = new Object();
+            stepId++;
+            removeStepListeners();
+            sequencePackage = null;
+            idleSavedTotal = 0;
+            sequenceListener = listener;
+            taskQueue.clear();
+            taskQueue.addAll(copy);
+            lagTotal = lagMax = lagCount = 0;
+            nextDueAt = SystemClock.uptimeMillis();
+            executeNextTask();
+        });
     }
 
     private void executeNextTask() {
-        if (taskQueue.isEmpty()) {
-            Log.d(TAG, "All tasks completed");
+        long lag = SystemClock.uptimeMillis() - nextDueAt;
+        lagTotal += lag;
+        lagMax = Math.max(lagMax, lag);
+        lagCount++;
+
+        AutomationTask task = taskQueue.poll();
+        if (task == null) {
+            Log.d(TAG, "All tasks completed, scheduling lag mean " + lagTotal / lagCount
+                    + " ms, max " + lagMax + " ms, idle waits saved " + idleSavedTotal + " ms");
+            TaskSequenceListener listener = sequenceListener;
+            if (listener != null) {
+                handler.post(listener::onSequenceCompleted);
+            }
             return;
         }
-
-        AutomationTask task = taskQueue.remove(0);
         executeTask(task);
     }
 
+    // The next task starts delayAfter ms after the tap has actually been
+    // performed, however long the dispatch took
+    private void performClick(AutomationTask task, int attempt) {
+        dispatchStep(tap(task.x, task.y), TAP_DURATION_MS,
+                () -> {
+                    Log.d(TAG, "Click took " + (SystemClock.uptimeMillis() - gestureDispatchedAt)
+                            + " ms from dispatch to completion");
+                    scheduleNextTask(task.delayAfter);
+                },
+                reason -> stepFailed(task, attempt, "Click at (" + task.x + ", " + task.y + ") " + reason,
+                        () -> performClick(task, attempt + 1)));
+    }
+
+    // TAPS: the taps from index from on, packed into one gesture up to the
+    // system's stroke and duration limits; the rest follow in further
+    // gestures, each dispatched when its first tap is due. startedAt is
+    // when the first batch was dispatched, -1 before it ran. A task built
+    // with singleStrokes() sends one CLICK-like gesture per tap instead
+    private void performTaps(AutomationTask task, int from, long startedAt, int attempt) {
+        int maxStrokes = task.singleStrokes ? 1 : GestureDescription.getMaxStrokeCount();
+        long maxDuration = GestureDescription.getMaxGestureDuration();
+        long tapMs = task.singleStrokes ? TAP_DURATION_MS : BURST_TAP_MS;
+        long base = task.offsets[from];
+        GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
+        int to = from;
+        while (to < task.xs.length && to - from < maxStrokes
+                && task.offsets[to] - base + tapMs <= maxDuration) {
+            Path path = new Path();
+            path.moveTo(task.xs[to], task.ys[to]);
+            gestureBuilder.addStroke(new GestureDescription.StrokeDescription(path,
+                    task.offsets[to] - base, tapMs));
+            to++;
+        }
+        int end = to;
+        long duration = task.offsets[end - 1] - base + tapMs;
+        dispatchStep(gestureBuilder.build(), duration, () -> {
+            long now = SystemClock.uptimeMillis();
+            long batchStartedAt = gestureDispatchedAt;
+            long firstStartedAt = startedAt < 0 ? batchStartedAt : startedAt;
+            if (end < task.xs.length) {
+                long due = batchStartedAt + task.offsets[end] - base;
+                postStepAt(() -> performTaps(task, end, firstStartedAt, 0), Math.max(now, due));
+                return;
+            }
+            // Measured from the first dispatch to the last completion
+            long elapsed = now - firstStartedAt;
+            Log.d(TAG, end + " taps in " + elapsed + " ms, " + end * 1000 / Math.max(1, elapsed) + " taps/s"
+                    + (task.singleStrokes ? " (one gesture per tap)" : " (batched)"));
+            scheduleNextTask(task.delayAfter);
+        }, reason -> stepFailed(task, attempt, "Taps " + from + "-" + (end - 1) + " " + reason,
+                () -> performTaps(task, from, startedAt, attempt + 1)));
+    }
+
+    // Dispatches gesture on the main thread as the step in flight; exactly
+    // one of onDone and onFailed (with the reason) then runs on the runner
+    private void dispatchStep(GestureDescription gesture, long durationMs, Runnable onDone,
+                              Consumer<String> onFailed) {
+        long id = ++stepId;
+        GestureResultCallback callback = new GestureResultCallback() {
+            @Override
+            public void onCompleted(GestureDescription gestureDescription) {
+                if (endStep(id)) {
+                    onDone.run();
+                }
+            }
+
+            @Override
+            public void onCancelled(GestureDescription gestureDescription) {
+                if (endStep(id)) {
+                    onFailed.accept("cancelled");
+                }
+            }
+        };
+        // Dispatched on the main thread, results delivered on the runner
+        handler.post(() -> {
+            gestureDispatchedAt = SystemClock.uptimeMillis();
+            if (!dispatchGesture(gesture, callback, runner)) {
+                runner.post(() -> {
+                    if (endStep(id)) {
+                        onFailed.accept("rejected");
+                    }
+                });
+            }
+        });
+        postStep(() -> {
+            if (endStep(id)) {
+                onFailed.accept("timed out");
+            }
+        }, durationMs + GESTURE_TIMEOUT_MS);
+    }
+
+    // LAUNCH_APP ends once the app's window is up and settled, or after
+    // delayAfter ms at the latest
+    private void performLaunch(AutomationTask task) {
+        long id = ++stepId;
+        launchStartedAt = SystemClock.uptimeMillis();
+        launchWindowShown = false;
+        launchSettled = () -> {
+            if (endStep(id)) {
+                finishLaunch(task, "ready");
+            }
+        };
+        launchListener = event -> {
+            int type = event.getEventType();
+            // The event is recycled once this returns; only its type goes to the runner
+            runner.post(() -> onLaunchEvent(id, type));
+        };
+        addEventListener(launchListener, LAUNCH_EVENTS, task.packageName);
+        if (!launchApp(task.packageName)) {
+            removeStepListeners();
+            endStep(id);
+            scheduleNextTask(0);
+            return;
+        }
+        sequencePackage = task.packageName;
+        postStep(() -> {
+            if (endStep(id)) {
+                finishLaunch(task, launchWindowShown ? "still changing" : "shown no window");
+            }
+        }, task.delayAfter);
+    }
+
+    private void onLaunchEvent(long id, int type) {
+        if (id != stepId) {
+            return;
+        }
+        if (type == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+            launchWindowShown = true;
+        }
+        if (launchWindowShown) {
+            // Content still changing; start the quiet period over
+            runner.removeCallbacks(launchSettled);
+            postStep(launchSettled, LAUNCH_SETTLE_MS);
+        }
+    }
+
+    private void finishLaunch(AutomationTask task, String outcome) {
+        removeStepListeners();
+        runner.removeCallbacks(launchSettled);
+        Log.d(TAG, "Launch of " + task.packageName + " " + outcome + " after "
+                + (SystemClock.uptimeMillis() - launchStartedAt) + " ms");
+        scheduleNextTask(0);
+    }
+
+    // Frames for WAIT_IDLE to compare, e.g. from a screen capture; null
+    // (the default) leaves accessibility events as the only signal
+    public void setFrameSource(FrameSource source) {
+        runner.post(() -> {
+            frameSource = source;
+            lastGrid = null;
+        });
+    }
+
+    // WAIT_IDLE ends once no content change, scroll or window change was
+    // reported by the launched app (and no frame changed) for quietMs, or
+    // after delayAfter ms at the latest
+    private void performWaitIdle(AutomationTask task) {
+        long id = ++stepId;
+        idleStartedAt = SystemClock.uptimeMillis();
+        lastActivityAt = idleStartedAt;
+        lastGrid = null;
+        idleListener = event -> {
+            CharSequence packageName = event.getPackageName();
+            // This app's own windows (e.g. a toast it showed) do not count
+            if (packageName == null || !getPackageName().contentEquals(packageName)) {
+                lastActivityAt = event.getEventTime();
+            }
+        };
+        addEventListener(idleListener, UI_ACTIVITY_EVENTS, sequencePackage);
+        postStep(() -> {
+            if (endStep(id)) {
+                finishWaitIdle(task, "still busy");
+            }
+        }, task.delayAfter);
+        checkIdle(id, task);
+    }
+
+    private void checkIdle(long id, AutomationTask task) {
+        if (id != stepId) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (frameSource != null) {
+            sampleFrame(now);
+        }
+        long idleAt = lastActivityAt + task.quietMs;
+        if (now >= idleAt) {
+            if (endStep(id)) {
+                finishWaitIdle(task, "idle");
+            }
+            return;
+        }
+        // Events only push idleAt back, so waking up then is enough unless
+        // frames need sampling in between
+        long next = frameSource != null ? Math.min(idleAt, now + FRAME_POLL_MS) : idleAt;
+        postStepAt(() -> checkIdle(id, task), next);
+    }
+
+    private void sampleFrame(long now) {
+        PixelBuffer frame = frameSource.latestFrame();
+        if (frame == null) {
+            return;
+        }
+        FrameGrid grid = FrameGrid.of(frame);
+        if (lastGrid != null && (!grid.comparable(lastGrid)
+                || grid.changed(lastGrid, 0, 0, grid.getWidth(), grid.getHeight()))) {
+            lastActivityAt = now;
+        }
+        lastGrid = grid;
+    }
+
+    private void finishWaitIdle(AutomationTask task, String outcome) {
+        removeStepListeners();
+        lastGrid = null;
+        long waited = SystemClock.uptimeMillis() - idleStartedAt;
+        idleSavedTotal += Math.max(0, task.delayAfter - waited);
+        Log.d(TAG, "Wait " + outcome + " after " + waited + " ms of " + task.delayAfter + " ms");
+        scheduleNextTask(0);
+    }
+
+    private void removeStepListeners() {
+        if (launchListener != null) {
+            removeEventListener(launchListener);
+            launchListener = null;
+        }
+        if (idleListener != null) {
+            removeEventListener(idleListener);
+            idleListener = null;
+        }
+    }
+
+    // True for the first result of the step in flight, false for any later one
+    private boolean endStep(long id) {
+        if (id != stepId) {
+            return false;
+        }
+        stepId++;
+        return true;
+    }
+
+    private void stepFailed(AutomationTask task, int attempt, String failure, Runnable retry) {
+        if (attempt < task.retries) {
+            Log.w(TAG, failure + ", retrying");
+            postStep(retry, RETRY_DELAY_MS);
+            return;
+        }
+        Log.e(TAG, failure + ", sequence stopped");
+        taskQueue.clear();
+        TaskSequenceListener listener = sequenceListener;
+        if (listener != null) {
+            handler.post(() -> listener.onTaskFailed(task));
+        }
+    }
+
+    private void scheduleNextTask(long delayMs) {
+        nextDueAt = SystemClock.uptimeMillis() + delayMs;
+        postStep(this::executeNextTask, delayMs);
+    }
+
+    // Runner thread only; a new sequence cancels whatever is still pending
+    private void postStep(Runnable step, long delayMs) {
+        postStepAt(step, SystemClock.uptimeMillis() + delayMs);
+    }
+
+    private void postStepAt(Runnable step, long uptimeMillis) {
+        runner.postAtTime(step, sequenceToken, uptimeMillis);
+    }
+
     private void executeTask(AutomationTask task) {
         switch (task.type) {
             case LAUNCH_APP:
-                launchApp(task.packageName);
-                handler.postDelayed(this::executeNextTask, task.delayAfter);
+                performLaunch(task);
                 break;
 
             case CLICK:
-                clickAt(task.x, task.y);
-                handler.postDelayed(this::executeNextTask, task.delayAfter);
+                performClick(task, 0);
+                break;
+
+            case TAPS:
+                performTaps(task, 0, -1, 0);
                 break;
 
             case WAIT:
-                handler.postDelayed(this::executeNextTask, task.delayAfter);
+                scheduleNextTask(task.delayAfter);
+                break;
+
+            case WAIT_IDLE:
+                performWaitIdle(task);
                 break;
 
             default:
-                executeNextTask();
+                scheduleNextTask(0);
                 break;
         }
     }
 
+    // Called on the main thread; the event is only valid during the call
+    public interface EventListener {
+        void onAccessibilityEvent(AccessibilityEvent event);
+    }
+
+    private static final class Subscription {
+        final EventListener listener;
+        final int eventTypes;
+        final String packageName; // null for every package
+
+        Subscription(EventListener listener, int eventTypes, String packageName) {
+            this.listener = listener;
+            this.eventTypes = eventTypes;
+            this.packageName = packageName;
+        }
+    }
+
+    // Latest screen content for WAIT_IDLE, called on the runner thread
+    public interface FrameSource {
+        // null when there is no frame yet
+        PixelBuffer latestFrame();
+    }
+
+    // How a task sequence ended
+    public interface TaskSequenceListener {
+        void onSequenceCompleted();
+
+        // The sequence stops at the failed task
+        void onTaskFailed(AutomationTask task);
+    }
+
     // Task definition
     public static class AutomationTask {
         public enum TaskType {
             LAUNCH_APP,
             CLICK,
-            WAIT
+            TAPS,
+            WAIT,
+            WAIT_IDLE
         }
 
         TaskType type;
         String packageName;
         int x, y;
         long delayAfter; // milliseconds
+        int[] xs, ys; // TAPS
+        long[] offsets; // TAPS: start of each tap after the first, milliseconds
+        int retries; // Further attempts after a failed click or batch of taps
+        long quietMs; // WAIT_IDLE: how long the UI must stay unchanged
+        boolean singleStrokes; // TAPS: one gesture per tap, see singleStrokes()
 
+        // delayAfter is the longest wait for the app to come up; the next task
+        // starts as soon as its window has settled
         public static AutomationTask launchApp(String packageName, long delayAfter) {
             AutomationTask task = new AutomationTask();
             task.type = TaskType.LAUNCH_APP;
@@ -172,11 +639,72 @@ public class AutomationAccessibilityService extends AccessibilityService {
             return task;
         }
 
+        // Taps at (xs[i], ys[i]), each starting offsetsMs[i] after the first,
+        // dispatched as few multi-stroke gestures as the system allows; taps
+        // with equal offsets are several fingers at once. Offsets must not
+        // decrease
+        public static AutomationTask taps(int[] xs, int[] ys, long[] offsetsMs, long delayAfter) {
+            if (xs.length == 0 || ys.length != xs.length || offsetsMs.length != xs.length) {
+                throw new IllegalArgumentException("Need as many y and offset values as x values");
+            }
+            for (int i = 1; i < offsetsMs.length; i++) {
+                if (offsetsMs[i] < offsetsMs[i - 1]) {
+                    throw new IllegalArgumentException("Tap offsets must not decrease");
+                }
+            }
+            AutomationTask task = new AutomationTask();
+            task.type = TaskType.TAPS;
+            task.xs = xs.clone();
+            task.ys = ys.clone();
+            task.offsets = offsetsMs.clone();
+            task.delayAfter = delayAfter;
+            return task;
+        }
+
+        // count taps at one point, intervalMs apart
+        public static AutomationTask tapBurst(int x, int y, int count, long intervalMs, long delayAfter) {
+            int[] xs = new int[count];
+            int[] ys = new int[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                xs[i] = x;
+                ys[i] = y;
+                offsets[i] = i * intervalMs;
+            }
+            return taps(xs, ys, offsets, delayAfter);
+        }
+
         public static AutomationTask delay(long delayMs) {
             AutomationTask task = new AutomationTask();
             task.type = TaskType.WAIT;
             task.delayAfter = delayMs;
             return task;
         }
+
+        // Wait until the UI has not changed for quietMs, or at most
+        // timeoutMs, typically the delay a recording measured
+        public static AutomationTask waitIdle(long quietMs, long timeoutMs) {
+            AutomationTask task = new AutomationTask();
+            task.type = TaskType.WAIT_IDLE;
+            task.quietMs = quietMs;
+            task.delayAfter = timeoutMs;
+            return task;
+        }
+
+        // TAPS only: dispatch every tap as its own one-stroke, 100 ms gesture
+        // after the previous one completes, as a sequence of CLICK tasks
+        // would. Only meant for measuring: the same burst run both ways logs
+        // the batched and the one-gesture-per-tap taps/s side by side
+        public AutomationTask singleStrokes() {
+            this.singleStrokes = true;
+            return this;
+        }
+
+        // Retry a click, or a batch of taps, this many times when it is
+        // cancelled or not performed
+        public AutomationTask retries(int retries) {
+            this.retries = Math.max(0, retries);
+            return this;
+        }
     }
 }
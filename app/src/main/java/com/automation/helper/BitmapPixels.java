@@ -0,0 +1,27 @@
+package com.automation.helper;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import com.automation.helper.matcher.PixelBuffer;
+
+// Adapters from Android image types to the platform-independent PixelBuffer
+public final class BitmapPixels {
+    private BitmapPixels() {}
+
+    // Copy a bitmap into a PixelBuffer with a single bulk getPixels call
+    public static PixelBuffer fromBitmap(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        return new PixelBuffer(width, height, pixels);
+    }
+
+    // Convert an RGBA_8888 ImageReader image; the caller still owns and closes the image
+    public static PixelBuffer fromImage(Image image) {
+        Image.Plane plane = image.getPlanes()[0];
+        return PixelBuffer.fromRgba(plane.getBuffer(), image.getWidth(), image.getHeight(),
+                plane.getPixelStride(), plane.getRowStride());
+    }
+}
@@ -98,11 +98,8 @@ public class MainActivity extends Activity {
 
         java.util.List<AutomationAccessibilityService.AutomationTask> tasks = new java.util.ArrayList<>();
 
-        // Launch app
-        tasks.add(AutomationAccessibilityService.AutomationTask.launchApp(packageName, 3000));
-
-        // Wait for app to load
-        tasks.add(AutomationAccessibilityService.AutomationTask.delay(2000));
+        // Launch app, waiting for it to load
+        tasks.add(AutomationAccessibilityService.AutomationTask.launchApp(packageName, 5000));
 
         // Click if coordinates specified
         if (clickX >= 0 && clickY >= 0) {
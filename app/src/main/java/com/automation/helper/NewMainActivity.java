@@ -22,6 +22,8 @@ public class NewMainActivity extends Activity {
     private static final int REQUEST_CODE_OVERLAY = 100;
     private static final int REQUEST_CODE_APP_PICKER = 101;
     private static final int REQUEST_CODE_RECORDER = 102;
+    // How long the screen must stay unchanged after a replayed click
+    private static final long IDLE_QUIET_MS = 500;
 
     private RecyclerView recyclerView;
     private ScenarioAdapter adapter;
@@ -213,15 +215,28 @@ public class NewMainActivity extends Activity {
 
             // Launch app
             tasks.add(AutomationAccessibilityService.AutomationTask.launchApp(
-                    scenario.getPackageName(), 2000));
+                    scenario.getPackageName(), 5000));
 
-            // Add all click actions
+            // Add all click actions; after each, the UI settling ends the wait,
+            // the recorded delay only caps it
             for (Scenario.ClickAction action : scenario.getActions()) {
                 tasks.add(AutomationAccessibilityService.AutomationTask.click(
-                        action.getX(), action.getY(), action.getDelayAfter()));
+                        action.getX(), action.getY(), 0));
+                tasks.add(AutomationAccessibilityService.AutomationTask.waitIdle(
+                        IDLE_QUIET_MS, action.getDelayAfter()));
             }
 
-            service.executeTaskSequence(tasks);
+            service.executeTaskSequence(tasks, new AutomationAccessibilityService.TaskSequenceListener() {
+                @Override
+                public void onSequenceCompleted() {
+                }
+
+                @Override
+                public void onTaskFailed(AutomationAccessibilityService.AutomationTask task) {
+                    Toast.makeText(getApplicationContext(), "클릭이 취소되어 시나리오를 중단했습니다",
+                            Toast.LENGTH_LONG).show();
+                }
+            });
             Toast.makeText(NewMainActivity.this, "시나리오 실행 중...", Toast.LENGTH_SHORT).show();
         }
 
@@ -28,14 +28,11 @@ public class ScheduledTaskReceiver extends BroadcastReceiver {
         if (service != null) {
             List<AutomationAccessibilityService.AutomationTask> tasks = new ArrayList<>();
 
-            // Launch the app
+            // Launch the app, waiting for it to load
             if (packageName != null && !packageName.isEmpty()) {
-                tasks.add(AutomationAccessibilityService.AutomationTask.launchApp(packageName, 3000));
+                tasks.add(AutomationAccessibilityService.AutomationTask.launchApp(packageName, 5000));
             }
 
-            // Wait for app to load
-            tasks.add(AutomationAccessibilityService.AutomationTask.delay(2000));
-
             // Perform click if coordinates are specified
             if (clickX >= 0 && clickY >= 0) {
                 tasks.add(AutomationAccessibilityService.AutomationTask.click(clickX, clickY, 1000));
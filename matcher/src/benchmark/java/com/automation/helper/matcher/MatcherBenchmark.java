@@ -0,0 +1,369 @@
+package com.automation.helper.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Plain-JVM benchmark for the matching engine on synthetic tablet-sized frames.
+// Run with: ./gradlew :matcher:benchmark [--args=<threads>]
+public class MatcherBenchmark {
+    private static final int[][] FRAME_SIZES = { { 1920, 1080 }, { 2560, 1600 } };
+    private static final int TEMPLATE_WIDTH = 96;
+    private static final int TEMPLATE_HEIGHT = 48;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+
+    interface Search {
+        ImageMatcher.MatchResult run(PixelBuffer source, PixelBuffer template);
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            ImageMatcher.setParallelism(Integer.parseInt(args[0]));
+        }
+        System.out.println("Search pool parallelism: " + SearchPool.parallelism());
+        for (int[] size : FRAME_SIZES) {
+            Random random = new Random(42);
+            int targetX = targetX(size[0]);
+            int targetY = targetY(size[1]);
+            PixelBuffer frame = syntheticFrame(size[0], size[1], targetX, targetY, random);
+            PixelBuffer template = copy(frame.region(targetX, targetY, TEMPLATE_WIDTH, TEMPLATE_HEIGHT));
+            // Same screen after it got brighter (e.g. auto-brightness)
+            PixelBuffer brighter = brighten(frame, 40);
+
+            // A small icon elsewhere on the same frame
+            int iconX = size[0] / 5 + 2;
+            int iconY = size[1] / 4 + 3;
+            PixelBuffer icon = copy(frame.region(iconX, iconY, 24, 24));
+
+            // A whole dialog around the button
+            int dialogX = targetX - 300;
+            int dialogY = targetY - 200;
+            PixelBuffer dialog = copy(frame.region(dialogX, dialogY, 600, 400));
+
+            // Button, icon and something that is not on this screen
+            PixelBuffer absent = copy(syntheticFrame(400, 300, 100, 100, new Random(7)).region(90, 90, 120, 60));
+            List<PixelBuffer> templates = Arrays.asList(template, icon, absent);
+            MatchOptions ncc = new MatchOptions().mode(MatchMode.NCC).threshold(0.9);
+
+            // Button captured on a denser screen: 1.25x larger than on this one
+            PixelBuffer dense = CompiledTemplate.of(template).scaled(1.25).pixels;
+            MatchOptions anyScale = new MatchOptions().mode(MatchMode.NCC).threshold(0.9).scales(0.75, 1.5);
+
+            // A card around the button, rotated 10 degrees on another screen,
+            // and half covered by a toast on this one
+            int cardX = targetX - 72;
+            int cardY = targetY - 56;
+            PixelBuffer card = copy(frame.region(cardX, cardY, 240, 160));
+            int rotatedX = size[0] / 3;
+            int rotatedY = size[1] / 2;
+            PixelBuffer rotated = rotatePaste(syntheticFrame(size[0], size[1], 100, 100, new Random(5)),
+                    card, rotatedX, rotatedY, 10);
+            PixelBuffer covered = copy(frame);
+            fillRect(covered.getPixels(), size[0], cardX - 50, cardY, 170, 80, 0xFF303030);
+            MatchOptions features = new MatchOptions().mode(MatchMode.FEATURES).threshold(0.1);
+
+            // Polling the same screen, and the same screen with a status-bar
+            // clock that ticks between polls
+            CompiledTemplate compiled = CompiledTemplate.of(template);
+            MatchCache unchangedCache = new MatchCache();
+            MatchCache tickingCache = new MatchCache();
+            PixelBuffer ticked = copy(frame);
+            fillRect(ticked.getPixels(), size[0], size[0] - 120, 10, 80, 20, 0xFF202020);
+            int[] polls = new int[1];
+
+            List<Case> cases = new ArrayList<>();
+            cases.add(new Case("SAD", frame, template, ImageMatcher::findImage));
+            cases.add(new Case("SAD, no early abandon", frame, template,
+                    (s, t) -> ImageMatcher.findImage(s, t, new MatchOptions().earlyAbandon(false))));
+            cases.add(new Case("NCC", frame, template,
+                    (s, t) -> ImageMatcher.findImage(s, t, 0.9, MatchMode.NCC)));
+            cases.add(new Case("SAD, frame +40", brighter, template, ImageMatcher::findImage));
+            cases.add(new Case("NCC, frame +40", brighter, template,
+                    (s, t) -> ImageMatcher.findImage(s, t, 0.9, MatchMode.NCC)));
+            cases.add(new Case("NCC, 24x24 icon", frame, icon, iconX, iconY,
+                    (s, t) -> ImageMatcher.findImage(s, t, 0.9, MatchMode.NCC)));
+            for (MatchOptions.Backend backend : MatchOptions.Backend.values()) {
+                cases.add(new Case("NCC, 600x400 " + backend, frame, dialog, dialogX, dialogY,
+                        (s, t) -> ImageMatcher.findImage(s, t,
+                                new MatchOptions().mode(MatchMode.NCC).threshold(0.9).backend(backend))));
+            }
+            CompiledTemplate compiledDialog = CompiledTemplate.of(dialog);
+            cases.add(new Case("NCC, 600x400 compiled", frame, dialog, dialogX, dialogY,
+                    (s, t) -> ImageMatcher.findImage(s, compiledDialog,
+                            new MatchOptions().mode(MatchMode.NCC).threshold(0.9))));
+            cases.add(new Case("NCC, 600x400 300 samples", frame, dialog, dialogX, dialogY,
+                    (s, t) -> ImageMatcher.findImage(s, t,
+                            new MatchOptions().mode(MatchMode.NCC).threshold(0.9).samples(300))));
+            PrefilterStats prefiltered = new PrefilterStats();
+            cases.add(new Case("NCC, colour prefilter", frame, template,
+                    (s, t) -> ImageMatcher.findImage(s, t, new MatchOptions().mode(MatchMode.NCC).threshold(0.9)
+                            .colourPrefilter(24).prefilterStats(prefiltered))));
+            cases.add(new Case("SAD, colour prefilter", frame, template,
+                    (s, t) -> ImageMatcher.findImage(s, t, new MatchOptions().colourPrefilter(24))));
+            cases.add(new Case("NCC, 1 candidate", frame, template,
+                    (s, t) -> ImageMatcher.findImage(s, t,
+                            new MatchOptions().mode(MatchMode.NCC).threshold(0.9).candidates(1))));
+            cases.add(new Case("NCC, 3x findImage", frame, template, (s, t) -> {
+                ImageMatcher.MatchResult first = null;
+                for (PixelBuffer each : templates) {
+                    ImageMatcher.MatchResult result = ImageMatcher.findImage(s, each, ncc);
+                    first = first == null ? result : first;
+                }
+                return first;
+            }));
+            cases.add(new Case("NCC, findAll of 3", frame, template,
+                    (s, t) -> ImageMatcher.findAll(s, templates, ncc).get(0)));
+            cases.add(new Case("NCC, near last hit", frame, template,
+                    (s, t) -> ImageMatcher.findImage(s, t, new MatchOptions().mode(MatchMode.NCC).threshold(0.9)
+                            .near(targetX(s) + 5, targetY(s) - 3))));
+            cases.add(new Case("NCC, last hit moved", frame, template,
+                    (s, t) -> ImageMatcher.findImage(s, t, new MatchOptions().mode(MatchMode.NCC).threshold(0.9)
+                            .near(200, 150))));
+            cases.add(new Case("NCC, scales 0.75-1.5", frame, template,
+                    (s, t) -> ImageMatcher.findImage(s, t, anyScale)));
+            cases.add(new Case("NCC, 1.25x, scales", frame, dense,
+                    (s, t) -> ImageMatcher.findImage(s, t, anyScale)));
+            cases.add(new Case("NCC, cached, unchanged", frame, template,
+                    (s, t) -> unchangedCache.findImage(s, compiled, ncc)));
+            cases.add(new Case("NCC, cached, clock ticks", frame, template,
+                    (s, t) -> tickingCache.findImage(polls[0]++ % 2 == 0 ? s : ticked, compiled, ncc)));
+            // Bounding box of the rotated card, to within a few pixels
+            cases.add(new Case("FEATURES, rotated 10deg", rotated, card, rotatedX - 132, rotatedY - 100, 3,
+                    (s, t) -> ImageMatcher.findImage(s, t, features)));
+            cases.add(new Case("FEATURES, half covered", covered, card, cardX, cardY, 3,
+                    (s, t) -> ImageMatcher.findImage(s, t, features)));
+
+            System.out.println("Frame " + size[0] + "x" + size[1]
+                    + ", template " + TEMPLATE_WIDTH + "x" + TEMPLATE_HEIGHT
+                    + " at (" + targetX + ", " + targetY + ")");
+            // Warm every case up before timing any of them, so the JIT sees all
+            // scorers and later cases are not measured against a stale profile
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                for (Case c : cases) {
+                    c.search.run(c.source, c.template);
+                }
+            }
+            for (Case c : cases) {
+                report(c);
+            }
+            System.out.println("  Colour prefilter: " + prefiltered);
+            System.out.println("  Match cache: " + unchangedCache.getReused() + " reused, "
+                    + tickingCache.getRescanned() + " rescanned, "
+                    + (unchangedCache.getSearched() + tickingCache.getSearched()) + " full searches");
+            reportGrid(size[0], size[1], random);
+        }
+    }
+
+    // findAllImages on a 6x4 inventory grid of identical slots
+    private static void reportGrid(int width, int height, Random random) {
+        int columns = 6;
+        int rows = 4;
+        int slot = 64;
+        int pitch = 90;
+        int gridX = width / 3 + 1;
+        int gridY = height / 3 + 2;
+        PixelBuffer frame = syntheticFrame(width, height, 5, 5, random);
+        int[] pixels = frame.getPixels();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int x0 = gridX + column * pitch;
+                int y0 = gridY + row * pitch;
+                fillRect(pixels, width, x0, y0, slot, slot, 0xFF5A3E2B);
+                fillRect(pixels, width, x0 + 4, y0 + 4, slot - 8, slot - 8, 0xFFC8A165);
+                drawGlyphs(pixels, width, x0 + 12, y0 + 26, 4, 0xFF202020, new Random(1));
+            }
+        }
+        PixelBuffer template = copy(frame.region(gridX, gridY, slot, slot));
+
+        for (MatchMode mode : MatchMode.values()) {
+            if (mode == MatchMode.FEATURES) {
+                // Finds one placement, not every instance
+                continue;
+            }
+            MatchOptions options = new MatchOptions().mode(mode).threshold(0.9).maxResults(50);
+            List<ImageMatcher.MatchResult> results = null;
+            long[] times = new long[MEASURED_RUNS];
+            for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+                long start = System.nanoTime();
+                results = ImageMatcher.findAllImages(frame, template, options);
+                if (i >= WARMUP_RUNS) {
+                    times[i - WARMUP_RUNS] = System.nanoTime() - start;
+                }
+            }
+            Arrays.sort(times);
+            int hits = 0;
+            for (ImageMatcher.MatchResult r : results) {
+                int dx = r.x - gridX;
+                int dy = r.y - gridY;
+                if (dx % pitch == 0 && dy % pitch == 0 && dx >= 0 && dy >= 0
+                        && dx / pitch < columns && dy / pitch < rows) {
+                    hits++;
+                }
+            }
+            System.out.printf("  %-24s median %8.2f ms   %d results, %d of %d grid slots%n",
+                    mode + ", findAllImages", times[MEASURED_RUNS / 2] / 1e6, results.size(), hits,
+                    columns * rows);
+        }
+    }
+
+    private static void report(Case c) {
+        ImageMatcher.MatchResult result = null;
+        long[] times = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            result = c.search.run(c.source, c.template);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+
+        String outcome = result == null ? "no match"
+                : (Math.abs(result.x - c.expectedX) <= c.tolerance && Math.abs(result.y - c.expectedY) <= c.tolerance
+                   ? "hit" : "wrong location")
+                  + String.format(" (%d, %d) score %.3f", result.x, result.y, result.score);
+        System.out.printf("  %-24s median %8.2f ms   %s%n", c.name, times[MEASURED_RUNS / 2] / 1e6, outcome);
+    }
+
+    private static final class Case {
+        final String name;
+        final PixelBuffer source;
+        final PixelBuffer template;
+        final int expectedX;
+        final int expectedY;
+        final int tolerance;
+        final Search search;
+
+        // Template cut from the main target location
+        Case(String name, PixelBuffer source, PixelBuffer template, Search search) {
+            this(name, source, template, targetX(source), targetY(source), search);
+        }
+
+        Case(String name, PixelBuffer source, PixelBuffer template, int expectedX, int expectedY,
+             Search search) {
+            this(name, source, template, expectedX, expectedY, 0, search);
+        }
+
+        Case(String name, PixelBuffer source, PixelBuffer template, int expectedX, int expectedY, int tolerance,
+             Search search) {
+            this.name = name;
+            this.source = source;
+            this.template = template;
+            this.expectedX = expectedX;
+            this.expectedY = expectedY;
+            this.tolerance = tolerance;
+            this.search = search;
+        }
+    }
+
+    private static int targetX(int frameWidth) { return frameWidth * 2 / 3 + 3; }
+    private static int targetY(int frameHeight) { return frameHeight / 2 + 1; }
+    private static int targetX(PixelBuffer frame) { return targetX(frame.getWidth()); }
+    private static int targetY(PixelBuffer frame) { return targetY(frame.getHeight()); }
+
+    // UI-like frame: flat panels of random colour, rows of text-like glyphs,
+    // a bordered button at (buttonX, buttonY) and light sensor noise
+    static PixelBuffer syntheticFrame(int width, int height, int buttonX, int buttonY, Random random) {
+        int[] pixels = new int[width * height];
+        int background = 0xFFF0F0F0;
+        Arrays.fill(pixels, background);
+        for (int i = 0; i < 400; i++) {
+            int w = 20 + random.nextInt(200);
+            int h = 10 + random.nextInt(80);
+            int x0 = random.nextInt(width - w);
+            int y0 = random.nextInt(height - h);
+            fillRect(pixels, width, x0, y0, w, h, 0xFF000000 | random.nextInt(0x1000000));
+        }
+        for (int i = 0; i < 300; i++) {
+            int x0 = random.nextInt(width - 200);
+            int y0 = random.nextInt(height - 12);
+            drawGlyphs(pixels, width, x0, y0, 4 + random.nextInt(20), 0xFF202020, random);
+        }
+
+        fillRect(pixels, width, buttonX, buttonY, TEMPLATE_WIDTH, TEMPLATE_HEIGHT, 0xFF1E63C8);
+        fillRect(pixels, width, buttonX + 3, buttonY + 3, TEMPLATE_WIDTH - 6, TEMPLATE_HEIGHT - 6, 0xFF3B82F6);
+        drawGlyphs(pixels, width, buttonX + 18, buttonY + 18, 7, 0xFFFFFFFF, random);
+
+        for (int i = 0; i < pixels.length; i++) {
+            int noise = random.nextInt(7) - 3;
+            int p = pixels[i];
+            int r = clamp(((p >> 16) & 0xFF) + noise);
+            int g = clamp(((p >> 8) & 0xFF) + noise);
+            int b = clamp((p & 0xFF) + noise);
+            pixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+        return new PixelBuffer(width, height, pixels);
+    }
+
+    private static void fillRect(int[] pixels, int stride, int x0, int y0, int w, int h, int color) {
+        for (int y = y0; y < y0 + h; y++) {
+            Arrays.fill(pixels, y * stride + x0, y * stride + x0 + w, color);
+        }
+    }
+
+    // Random 4x6 glyphs drawn with 2 px strokes, 10 px apart
+    private static void drawGlyphs(int[] pixels, int stride, int x0, int y0, int count, int color,
+                                   Random random) {
+        for (int g = 0; g < count; g++) {
+            int bits = random.nextInt();
+            for (int cell = 0; cell < 24; cell++) {
+                if ((bits >> cell & 1) != 0) {
+                    fillRect(pixels, stride, x0 + g * 10 + (cell % 4) * 2, y0 + (cell / 4) * 2, 2, 2, color);
+                }
+            }
+        }
+    }
+
+    static PixelBuffer brighten(PixelBuffer buffer, int delta) {
+        int[] source = buffer.getPixels();
+        int[] pixels = new int[source.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int p = source[i];
+            int r = clamp(((p >> 16) & 0xFF) + delta);
+            int g = clamp(((p >> 8) & 0xFF) + delta);
+            int b = clamp((p & 0xFF) + delta);
+            pixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+        return new PixelBuffer(buffer.getWidth(), buffer.getHeight(), pixels);
+    }
+
+    // Copy of frame with template drawn over it, rotated by degrees about
+    // (centerX, centerY); nearest-neighbour, like a screenshot of a tilted view
+    static PixelBuffer rotatePaste(PixelBuffer frame, PixelBuffer template, int centerX, int centerY,
+                                   double degrees) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int[] pixels = copy(frame).getPixels();
+        double cos = Math.cos(Math.toRadians(degrees));
+        double sin = Math.sin(Math.toRadians(degrees));
+        int tw = template.getWidth();
+        int th = template.getHeight();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = x - centerX;
+                double dy = y - centerY;
+                double u = cos * dx + sin * dy + tw / 2.0;
+                double v = -sin * dx + cos * dy + th / 2.0;
+                if (u >= 0 && v >= 0 && u < tw && v < th) {
+                    pixels[y * width + x] = template.getPixel((int) u, (int) v);
+                }
+            }
+        }
+        return new PixelBuffer(width, height, pixels);
+    }
+
+    static PixelBuffer copy(PixelBuffer region) {
+        int width = region.getWidth();
+        int height = region.getHeight();
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(region.getPixels(), region.getOffset() + y * region.getStride(),
+                    pixels, y * width, width);
+        }
+        return new PixelBuffer(width, height, pixels);
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+}
@@ -0,0 +1,16 @@
+package com.automation.helper.matcher;
+
+// Lets a caller abort an in-flight search, e.g. when a scenario is stopped.
+// Searches poll it before every window they score; a cancelled search
+// returns null.
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,77 @@
+package com.automation.helper.matcher;
+
+// Best-scoring positions seen so far, highest first, capped at a fixed
+// capacity. A position within `radius` of a better one on both axes is
+// treated as the same peak and dropped. Stored in parallel arrays so
+// offering a position never allocates.
+final class Candidates {
+    private final int[] xs;
+    private final int[] ys;
+    private final double[] scores;
+    private final int radius;
+    private int size;
+
+    Candidates(int capacity, int radius) {
+        xs = new int[capacity];
+        ys = new int[capacity];
+        scores = new double[capacity];
+        this.radius = radius;
+    }
+
+    // Lowest score that would still be accepted, or -Infinity while not full
+    double floor() {
+        return size < scores.length ? Double.NEGATIVE_INFINITY : scores[size - 1];
+    }
+
+    void offer(int x, int y, double score) {
+        if (score <= floor()) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (Math.abs(xs[i] - x) <= radius && Math.abs(ys[i] - y) <= radius) {
+                if (scores[i] >= score) {
+                    return;
+                }
+                remove(i);
+                break;
+            }
+        }
+
+        int i = Math.min(size, scores.length - 1);
+        while (i > 0 && scores[i - 1] < score) {
+            xs[i] = xs[i - 1];
+            ys[i] = ys[i - 1];
+            scores[i] = scores[i - 1];
+            i--;
+        }
+        xs[i] = x;
+        ys[i] = y;
+        scores[i] = score;
+        if (size < scores.length) {
+            size++;
+        }
+    }
+
+    void offerAll(Candidates other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.xs[i], other.ys[i], other.scores[i]);
+        }
+    }
+
+    private void remove(int index) {
+        int tail = size - index - 1;
+        System.arraycopy(xs, index + 1, xs, index, tail);
+        System.arraycopy(ys, index + 1, ys, index, tail);
+        System.arraycopy(scores, index + 1, scores, index, tail);
+        size--;
+    }
+
+    int size() { return size; }
+    int x(int i) { return xs[i]; }
+    int y(int i) { return ys[i]; }
+    double score(int i) { return scores[i]; }
+
+    void clear() {
+        size = 0;
+    }
+}
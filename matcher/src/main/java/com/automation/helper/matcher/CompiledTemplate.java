@@ -0,0 +1,587 @@
+package com.automation.helper.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A template prepared once for any number of searches: a private copy of its
+// pixels, the luma pyramid down to PyramidSearch.MIN_TEMPLATE_SIDE and, per
+// level, what the scorers would otherwise recompute on every call (sums and
+// variance for NCC, integral image and early-abandon order for SAD).
+// A mask, from the template's alpha or given explicitly, limits every level
+// to the pixels it covers; MatchOptions.samples limits them further to the
+// highest-gradient ones. Immutable, so one instance can be shared between
+// threads and searches.
+public final class CompiledTemplate {
+    // Total template pixels kept by of(), rescaled and sparse versions
+    // included; each costs roughly 30 bytes
+    private static final long CACHE_BUDGET = 1L << 20;
+    // Versions kept per template, least recently used dropped first; bounds
+    // them also for templates no longer in the cache
+    private static final int MAX_SCALED = 16;
+    private static final int MAX_SAMPLED = 4;
+    private static final Map<Key, CompiledTemplate> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedArea;
+    // Coarse levels with fewer masked-in pixels than this are not searched
+    private static final int MIN_LEVEL_SAMPLES = 32;
+
+    final PixelBuffer pixels;
+    // Row-major, true where pixels are compared; null when all of them are
+    final boolean[] mask;
+    // MatchOptions.samples this was compiled for, 0 for every pixel
+    private final int sampleLimit;
+    // Colour SAD visiting order, most distinctive pixel first
+    final int[] colourOrder;
+    // Mean redGreen() and blueGreen() over the whole box, for the prefilter
+    final double meanRedGreen;
+    final double meanBlueGreen;
+    private final Level[] levels;
+    private final int hash;
+    // The template of() returned that this one derives from, or this
+    private final CompiledTemplate root;
+    // Guarded by CACHE: whether root is in it, and the pixels it accounts
+    // for there, its derived versions' included
+    private boolean cached;
+    private long charged;
+    // Rescaled versions by packed width << 16 | height
+    private final Map<Integer, CompiledTemplate> scaled = new Derived(MAX_SCALED);
+    // Sparse versions by sample limit
+    private final Map<Integer, CompiledTemplate> sampled = new Derived(MAX_SAMPLED);
+    // MatchMode.FEATURES keypoints, detected on first use
+    private Keypoints keypoints;
+
+    private CompiledTemplate(PixelBuffer pixels, boolean[] mask, int sampleLimit, int hash,
+                             CompiledTemplate root) {
+        this.pixels = pixels;
+        this.mask = mask;
+        this.sampleLimit = sampleLimit;
+        this.hash = hash;
+        this.root = root != null ? root : this;
+
+        int side = Math.min(pixels.getWidth(), pixels.getHeight());
+        int top = 0;
+        while ((side >> (top + 1)) >= PyramidSearch.MIN_TEMPLATE_SIDE) {
+            top++;
+        }
+        List<Level> built = new ArrayList<>();
+        GrayImage gray = GrayImage.of(pixels);
+        boolean[] levelMask = mask;
+        for (int i = 0; i <= top; i++) {
+            // A thin masked shape can vanish on coarse levels
+            if (i > 0 && levelMask != null && count(levelMask) < MIN_LEVEL_SAMPLES) {
+                break;
+            }
+            built.add(new Level(gray, levelMask, sampleLimit));
+            if (i < top) {
+                levelMask = levelMask != null ? downsample(levelMask, gray.width, gray.height) : null;
+                gray = gray.downsample();
+            }
+        }
+        levels = built.toArray(new Level[0]);
+        colourOrder = colourOrder(pixels, levels[0].samples);
+
+        long totalRedGreen = 0;
+        long totalBlueGreen = 0;
+        for (int p : pixels.getPixels()) {
+            totalRedGreen += redGreen(p);
+            totalBlueGreen += blueGreen(p);
+        }
+        int area = pixels.getWidth() * pixels.getHeight();
+        meanRedGreen = (double) totalRedGreen / area;
+        meanBlueGreen = (double) totalBlueGreen / area;
+    }
+
+    // Chroma of an ARGB pixel as a byte value: (R - G) / 2 + 128
+    static int redGreen(int argb) {
+        return ((((argb >> 16) & 0xFF) - ((argb >> 8) & 0xFF)) >> 1) + 128;
+    }
+
+    // (B - G) / 2 + 128
+    static int blueGreen(int argb) {
+        return (((argb & 0xFF) - ((argb >> 8) & 0xFF)) >> 1) + 128;
+    }
+
+    // Compiled form of template, shared with earlier calls for the same
+    // pixels. Every call still scans template for its alpha mask, hashes it
+    // and, when cached, compares it with the cached copy: three passes over
+    // the template, cheap next to a search but not free. Callers searching
+    // the same template repeatedly keep the result and pass it to
+    // ImageMatcher instead. Pixels with alpha below 128, e.g. the
+    // transparent corners of an icon, are masked out; opaque templates are
+    // compared in full. Throws IllegalArgumentException for a fully
+    // transparent template, which has nothing to compare.
+    public static CompiledTemplate of(PixelBuffer template) {
+        return compile(template, alphaMask(template));
+    }
+
+    // Compares only the pixels of template whose mask pixel is opaque and
+    // light (alpha and luma of at least 128), e.g. a white-on-black mask
+    // image of the same size. Template alpha is ignored.
+    public static CompiledTemplate of(PixelBuffer template, PixelBuffer mask) {
+        if (mask.getWidth() != template.getWidth() || mask.getHeight() != template.getHeight()) {
+            throw new IllegalArgumentException("Mask is " + mask.getWidth() + "x" + mask.getHeight()
+                    + ", template is " + template.getWidth() + "x" + template.getHeight());
+        }
+        boolean[] in = new boolean[mask.getWidth() * mask.getHeight()];
+        for (int y = 0; y < mask.getHeight(); y++) {
+            for (int x = 0; x < mask.getWidth(); x++) {
+                int p = mask.getPixel(x, y);
+                in[y * mask.getWidth() + x] = (p >>> 24) >= 128 && GrayImage.luma(p) >= 128;
+            }
+        }
+        return compile(template, in);
+    }
+
+    private static CompiledTemplate compile(PixelBuffer template, boolean[] mask) {
+        if (mask != null && count(mask) == 0) {
+            throw new IllegalArgumentException("Mask excludes every template pixel");
+        }
+        int hash = contentHash(template);
+        Key probe = new Key(template, mask, hash);
+        synchronized (CACHE) {
+            CompiledTemplate cached = CACHE.get(probe);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        CompiledTemplate compiled = new CompiledTemplate(copy(template), mask, 0, hash, null);
+        synchronized (CACHE) {
+            CompiledTemplate raced = CACHE.get(probe);
+            if (raced != null) {
+                return raced;
+            }
+            CACHE.put(new Key(compiled.pixels, mask, hash), compiled);
+            compiled.cached = true;
+            compiled.charged = compiled.area();
+            cachedArea += compiled.charged;
+            evict(compiled);
+        }
+        return compiled;
+    }
+
+    // Drops the least recently used templates until the budget holds again,
+    // stopping at keep, the one in use. Caller holds CACHE.
+    private static void evict(CompiledTemplate keep) {
+        Iterator<CompiledTemplate> eldest = CACHE.values().iterator();
+        while (cachedArea > CACHE_BUDGET && eldest.hasNext()) {
+            CompiledTemplate entry = eldest.next();
+            if (entry == keep) {
+                break;
+            }
+            cachedArea -= entry.charged;
+            entry.cached = false;
+            eldest.remove();
+        }
+    }
+
+    // A derived version of area pixels was kept (or, negative, dropped)
+    private void charge(long area) {
+        synchronized (CACHE) {
+            root.charged += area;
+            if (root.cached) {
+                cachedArea += area;
+                if (area > 0) {
+                    evict(root);
+                }
+            }
+        }
+    }
+
+    // This template resized by scale, compiled on first use and then kept.
+    // Bilinear, like Bitmap.createScaledBitmap with filtering, which is
+    // adequate for the 0.5x-2x range density differences produce.
+    CompiledTemplate scaled(double scale) {
+        return scaled(scale, true);
+    }
+
+    // keep = false for one-off sizes, e.g. ScaleSearch trying scales between
+    // its steps, which would otherwise pile up here
+    CompiledTemplate scaled(double scale, boolean keep) {
+        int width = Math.max(1, (int) Math.round(getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(getHeight() * scale));
+        if (width == getWidth() && height == getHeight()) {
+            return this;
+        }
+        Integer key = width << 16 | height;
+        synchronized (scaled) {
+            CompiledTemplate cached = scaled.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        PixelBuffer resized = resize(pixels, width, height);
+        boolean[] resizedMask = mask != null ? resize(mask, getWidth(), getHeight(), width, height) : null;
+        if (resizedMask != null && count(resizedMask) == 0) {
+            // Scaled down too far to keep any of the shape; fall back to the box
+            resizedMask = null;
+        }
+        CompiledTemplate compiled = new CompiledTemplate(resized, resizedMask, sampleLimit, contentHash(resized), root);
+        if (!keep) {
+            return compiled;
+        }
+        synchronized (scaled) {
+            CompiledTemplate raced = scaled.putIfAbsent(key, compiled);
+            if (raced != null) {
+                return raced;
+            }
+            charge(compiled.area());
+            return compiled;
+        }
+    }
+
+    // Version comparing at most `samples` masked-in pixels per level, those
+    // with the strongest luma gradient; 0 compares all of them
+    CompiledTemplate sampled(int samples) {
+        if (samples == sampleLimit) {
+            return this;
+        }
+        synchronized (sampled) {
+            CompiledTemplate cached = sampled.get(samples);
+            if (cached == null) {
+                cached = new CompiledTemplate(pixels, mask, samples, hash, root);
+                sampled.put(samples, cached);
+                charge(cached.area());
+            }
+            return cached;
+        }
+    }
+
+    synchronized Keypoints keypoints() {
+        if (keypoints == null) {
+            keypoints = Keypoints.detect(levels[0].gray, FeatureMatcher.TEMPLATE_KEYPOINTS);
+        }
+        return keypoints;
+    }
+
+    public int getWidth() { return pixels.getWidth(); }
+    public int getHeight() { return pixels.getHeight(); }
+
+    Level level(int level) {
+        return levels[level];
+    }
+
+    GrayImage gray(int level) {
+        return levels[level].gray;
+    }
+
+    int topLevel() {
+        return levels.length - 1;
+    }
+
+    private long area() {
+        return (long) pixels.getWidth() * pixels.getHeight();
+    }
+
+    // Versions of one template, guarded by the map itself
+    private final class Derived extends LinkedHashMap<Integer, CompiledTemplate> {
+        private static final long serialVersionUID = 1L;
+        private final int max;
+
+        Derived(int max) {
+            super(16, 0.75f, true);
+            this.max = max;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CompiledTemplate> eldest) {
+            if (size() <= max) {
+                return false;
+            }
+            charge(-eldest.getValue().area());
+            return true;
+        }
+    }
+
+    // Per-level data for the luma scorers. Sums, variance and order cover
+    // the compared pixels only.
+    static final class Level {
+        final GrayImage gray;
+        // Indices into gray.data of the compared pixels in ascending order;
+        // null when every pixel is compared
+        final int[] samples;
+        final long sum;
+        // count * sum(t^2) - sum(t)^2, i.e. count^2 times the variance
+        final double variance;
+        // Only for full templates: the SAD block bound assumes every pixel counts
+        final IntegralImage integral;
+        // Indices into gray.data, furthest from the mean first
+        final int[] order;
+
+        Level(GrayImage gray, boolean[] mask, int sampleLimit) {
+            this.gray = gray;
+            this.samples = samples(gray, mask, sampleLimit);
+            int count = count();
+            long total = 0;
+            long squares = 0;
+            for (int k = 0; k < count; k++) {
+                int v = gray.data[index(k)] & 0xFF;
+                total += v;
+                squares += v * v;
+            }
+            this.sum = total;
+            this.variance = (double) (count * squares - total * total);
+            this.integral = samples == null ? new IntegralImage(gray) : null;
+
+            int mean = count > 0 ? (int) (total / count) : 0;
+            int[] deviations = new int[count];
+            for (int k = 0; k < count; k++) {
+                deviations[k] = Math.abs((gray.data[index(k)] & 0xFF) - mean);
+            }
+            int[] order = PixelOrder.mostDistinctFirst(deviations, 255);
+            for (int k = 0; k < count; k++) {
+                order[k] = index(order[k]);
+            }
+            this.order = order;
+        }
+
+        int count() {
+            return samples != null ? samples.length : gray.data.length;
+        }
+
+        // Index into gray.data of the k-th compared pixel
+        int index(int k) {
+            return samples != null ? samples[k] : k;
+        }
+
+        boolean isFlat() {
+            return variance <= 0;
+        }
+
+        private static int[] samples(GrayImage gray, boolean[] mask, int sampleLimit) {
+            int area = gray.data.length;
+            int inside = mask != null ? CompiledTemplate.count(mask) : area;
+            if (sampleLimit <= 0 || inside <= sampleLimit) {
+                if (mask == null) {
+                    return null;
+                }
+                int[] all = new int[inside];
+                for (int i = 0, k = 0; i < area; i++) {
+                    if (mask[i]) {
+                        all[k++] = i;
+                    }
+                }
+                return all;
+            }
+            // Edges carry the shape; flat interiors match most backgrounds
+            // as well as they match the template
+            int[] gradients = new int[area];
+            for (int y = 0; y < gray.height; y++) {
+                for (int x = 0; x < gray.width; x++) {
+                    int i = y * gray.width + x;
+                    if (mask != null && !mask[i]) {
+                        continue;
+                    }
+                    // Masked-out neighbours count as the pixel itself, so the
+                    // outline against a transparent background is no edge
+                    int left = value(gray, mask, i, y * gray.width + Math.max(0, x - 1));
+                    int right = value(gray, mask, i, y * gray.width + Math.min(gray.width - 1, x + 1));
+                    int up = value(gray, mask, i, Math.max(0, y - 1) * gray.width + x);
+                    int down = value(gray, mask, i, Math.min(gray.height - 1, y + 1) * gray.width + x);
+                    // +1 keeps masked-in pixels ahead of masked-out ones
+                    gradients[i] = Math.abs(right - left) + Math.abs(down - up) + 1;
+                }
+            }
+            int[] strongest = Arrays.copyOf(PixelOrder.mostDistinctFirst(gradients, 511), sampleLimit);
+            Arrays.sort(strongest);
+            return strongest;
+        }
+
+        private static int value(GrayImage gray, boolean[] mask, int self, int neighbour) {
+            return gray.data[mask == null || mask[neighbour] ? neighbour : self] & 0xFF;
+        }
+    }
+
+    private static int[] colourOrder(PixelBuffer pixels, int[] samples) {
+        int[] data = pixels.getPixels();
+        int count = samples != null ? samples.length : data.length;
+        long sumR = 0, sumG = 0, sumB = 0;
+        for (int k = 0; k < count; k++) {
+            int p = data[samples != null ? samples[k] : k];
+            sumR += (p >> 16) & 0xFF;
+            sumG += (p >> 8) & 0xFF;
+            sumB += p & 0xFF;
+        }
+        int meanR = (int) (sumR / count);
+        int meanG = (int) (sumG / count);
+        int meanB = (int) (sumB / count);
+        int[] deviations = new int[count];
+        for (int k = 0; k < count; k++) {
+            int p = data[samples != null ? samples[k] : k];
+            deviations[k] = Math.abs(((p >> 16) & 0xFF) - meanR)
+                    + Math.abs(((p >> 8) & 0xFF) - meanG)
+                    + Math.abs((p & 0xFF) - meanB);
+        }
+        int[] order = PixelOrder.mostDistinctFirst(deviations, 255 * 3);
+        if (samples != null) {
+            for (int k = 0; k < count; k++) {
+                order[k] = samples[order[k]];
+            }
+        }
+        return order;
+    }
+
+    // Null when every pixel is at least half opaque
+    private static boolean[] alphaMask(PixelBuffer template) {
+        boolean[] mask = null;
+        int width = template.getWidth();
+        for (int y = 0; y < template.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                boolean opaque = (template.getPixel(x, y) >>> 24) >= 128;
+                if (!opaque && mask == null) {
+                    mask = new boolean[width * template.getHeight()];
+                    Arrays.fill(mask, 0, y * width + x, true);
+                }
+                if (mask != null) {
+                    mask[y * width + x] = opaque;
+                }
+            }
+        }
+        return mask;
+    }
+
+    private static int count(boolean[] mask) {
+        int count = 0;
+        for (boolean in : mask) {
+            if (in) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Matches GrayImage.downsample, keeping a coarse pixel only when all four
+    // of its fine pixels are in, so no masked-out colour leaks into it
+    private static boolean[] downsample(boolean[] mask, int width, int height) {
+        int halfWidth = Math.max(1, width / 2);
+        int halfHeight = Math.max(1, height / 2);
+        boolean[] half = new boolean[halfWidth * halfHeight];
+        for (int y = 0; y < halfHeight; y++) {
+            int top = Math.min(2 * y, height - 1) * width;
+            int bottom = Math.min(2 * y + 1, height - 1) * width;
+            for (int x = 0; x < halfWidth; x++) {
+                int left = Math.min(2 * x, width - 1);
+                int right = Math.min(2 * x + 1, width - 1);
+                half[y * halfWidth + x] = mask[top + left] && mask[top + right]
+                        && mask[bottom + left] && mask[bottom + right];
+            }
+        }
+        return half;
+    }
+
+    // Nearest neighbour, sampling at the same pixel centres as resize
+    private static boolean[] resize(boolean[] mask, int sourceWidth, int sourceHeight, int width, int height) {
+        boolean[] out = new boolean[width * height];
+        for (int y = 0; y < height; y++) {
+            int sy = Math.min(sourceHeight - 1, (int) ((y + 0.5) * sourceHeight / height));
+            for (int x = 0; x < width; x++) {
+                int sx = Math.min(sourceWidth - 1, (int) ((x + 0.5) * sourceWidth / width));
+                out[y * width + x] = mask[sy * sourceWidth + sx];
+            }
+        }
+        return out;
+    }
+
+    private static PixelBuffer resize(PixelBuffer source, int width, int height) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        int[] in = source.getPixels();
+        int[] out = new int[width * height];
+        double scaleX = (double) sourceWidth / width;
+        double scaleY = (double) sourceHeight / height;
+        for (int y = 0; y < height; y++) {
+            // Sample at pixel centres
+            double sy = Math.max(0, Math.min(sourceHeight - 1, (y + 0.5) * scaleY - 0.5));
+            int y0 = (int) sy;
+            int y1 = Math.min(sourceHeight - 1, y0 + 1);
+            double fy = sy - y0;
+            for (int x = 0; x < width; x++) {
+                double sx = Math.max(0, Math.min(sourceWidth - 1, (x + 0.5) * scaleX - 0.5));
+                int x0 = (int) sx;
+                int x1 = Math.min(sourceWidth - 1, x0 + 1);
+                double fx = sx - x0;
+                int p00 = in[y0 * sourceWidth + x0];
+                int p01 = in[y0 * sourceWidth + x1];
+                int p10 = in[y1 * sourceWidth + x0];
+                int p11 = in[y1 * sourceWidth + x1];
+                int argb = 0;
+                for (int shift = 0; shift <= 24; shift += 8) {
+                    double top = ((p00 >> shift) & 0xFF) * (1 - fx) + ((p01 >> shift) & 0xFF) * fx;
+                    double bottom = ((p10 >> shift) & 0xFF) * (1 - fx) + ((p11 >> shift) & 0xFF) * fx;
+                    argb |= ((int) (top * (1 - fy) + bottom * fy + 0.5)) << shift;
+                }
+                out[y * width + x] = argb;
+            }
+        }
+        return new PixelBuffer(width, height, out);
+    }
+
+    // Compact copy, so later changes to the caller's pixels cannot leak in
+    private static PixelBuffer copy(PixelBuffer template) {
+        int width = template.getWidth();
+        int height = template.getHeight();
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(template.getPixels(), template.getOffset() + y * template.getStride(),
+                    pixels, y * width, width);
+        }
+        return new PixelBuffer(width, height, pixels);
+    }
+
+    private static int contentHash(PixelBuffer template) {
+        int[] pixels = template.getPixels();
+        int hash = 31 * template.getWidth() + template.getHeight();
+        for (int y = 0; y < template.getHeight(); y++) {
+            int row = template.getOffset() + y * template.getStride();
+            for (int x = 0; x < template.getWidth(); x++) {
+                hash = 31 * hash + pixels[row + x];
+            }
+        }
+        return hash;
+    }
+
+    // Cache key comparing pixel and mask content, so the same image decoded
+    // twice (e.g. from a re-loaded scenario) maps to one compiled template
+    private static final class Key {
+        final PixelBuffer pixels;
+        final boolean[] mask;
+        final int hash;
+
+        Key(PixelBuffer pixels, boolean[] mask, int hash) {
+            this.pixels = pixels;
+            this.mask = mask;
+            this.hash = 31 * hash + Arrays.hashCode(mask);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            PixelBuffer a = pixels;
+            PixelBuffer b = ((Key) o).pixels;
+            if (hash != ((Key) o).hash || a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()
+                    || !Arrays.equals(mask, ((Key) o).mask)) {
+                return false;
+            }
+            for (int y = 0; y < a.getHeight(); y++) {
+                int rowA = a.getOffset() + y * a.getStride();
+                int rowB = b.getOffset() + y * b.getStride();
+                for (int x = 0; x < a.getWidth(); x++) {
+                    if (a.getPixels()[rowA + x] != b.getPixels()[rowB + x]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.automation.helper.matcher;
+
+// MatchMode.FEATURES: template keypoints are matched to the frame's by
+// Hamming distance and a homography is fitted to the matches with RANSAC,
+// so a target that is rotated, slightly skewed or partly covered by a toast
+// is still found as long as enough of its corners are visible.
+final class FeatureMatcher {
+    // Keypoints kept per template and per frame. The frame keeps all it has
+    // in practice: capping it by strength drops whole text-free regions,
+    // and the target's corners with them.
+    static final int TEMPLATE_KEYPOINTS = 500;
+    static final int FRAME_KEYPOINTS = 30000;
+    // Descriptor bits that may differ in a match (of 256)
+    private static final int MAX_DISTANCE = 64;
+    // Lowe's ratio test: the best match must clearly beat the second best
+    private static final double RATIO = 0.8;
+    // Fewer agreeing matches than this are not trusted, whatever the ratio
+    private static final int MIN_INLIERS = 8;
+    // Mapped template area relative to its own beyond which a fit is rejected
+    private static final double MAX_AREA_RATIO = 4.0;
+
+    private FeatureMatcher() {}
+
+    // Best placement of template in source, or null when too few keypoints
+    // agree. Coordinates are relative to source.
+    static ImageMatcher.MatchResult match(SourceImage source, CompiledTemplate template, MatchOptions options) {
+        Keypoints features = template.keypoints();
+        if (features.count < MIN_INLIERS) {
+            return null;
+        }
+        PyramidSearch.checkCancelled(options.getCancellation());
+        Keypoints frame = source.keypoints();
+        PyramidSearch.checkCancelled(options.getCancellation());
+
+        double[] fromX = new double[features.count];
+        double[] fromY = new double[features.count];
+        double[] toX = new double[features.count];
+        double[] toY = new double[features.count];
+        int matches = 0;
+        for (int i = 0; i < features.count; i++) {
+            // Each keypoint is compared with every frame keypoint, up to 30000
+            PyramidSearch.checkCancelled(options.getCancellation());
+            int best = -1;
+            int bestDistance = Integer.MAX_VALUE;
+            int secondDistance = Integer.MAX_VALUE;
+            for (int j = 0; j < frame.count; j++) {
+                int distance = Keypoints.distance(features, i, frame, j);
+                if (distance < bestDistance) {
+                    secondDistance = bestDistance;
+                    bestDistance = distance;
+                    best = j;
+                } else if (distance < secondDistance) {
+                    secondDistance = distance;
+                }
+            }
+            if (best >= 0 && bestDistance <= MAX_DISTANCE && bestDistance < RATIO * secondDistance) {
+                fromX[matches] = features.x[i];
+                fromY[matches] = features.y[i];
+                toX[matches] = frame.x[best];
+                toY[matches] = frame.y[best];
+                matches++;
+            }
+        }
+        PyramidSearch.checkCancelled(options.getCancellation());
+
+        Homography homography = Homography.ransac(fromX, fromY, toX, toY, matches);
+        if (homography == null || homography.inlierCount < MIN_INLIERS) {
+            return null;
+        }
+
+        // Bounding box of the mapped template outline
+        int width = template.getWidth();
+        int height = template.getHeight();
+        double[] cornersX = { 0, width, width, 0 };
+        double[] cornersY = { 0, 0, height, height };
+        double[] mappedX = new double[4];
+        double[] mappedY = new double[4];
+        for (int c = 0; c < 4; c++) {
+            mappedX[c] = homography.mapX(cornersX[c], cornersY[c]);
+            mappedY[c] = homography.mapY(cornersX[c], cornersY[c]);
+        }
+        double area = convexArea(mappedX, mappedY);
+        double areaRatio = area / ((double) width * height);
+        if (Double.isNaN(areaRatio) || areaRatio < 1 / MAX_AREA_RATIO || areaRatio > MAX_AREA_RATIO) {
+            return null;
+        }
+        double minX = Math.min(Math.min(mappedX[0], mappedX[1]), Math.min(mappedX[2], mappedX[3]));
+        double maxX = Math.max(Math.max(mappedX[0], mappedX[1]), Math.max(mappedX[2], mappedX[3]));
+        double minY = Math.min(Math.min(mappedY[0], mappedY[1]), Math.min(mappedY[2], mappedY[3]));
+        double maxY = Math.max(Math.max(mappedY[0], mappedY[1]), Math.max(mappedY[2], mappedY[3]));
+        int x = (int) Math.round(minX);
+        int y = (int) Math.round(minY);
+        ImageMatcher.MatchResult result = new ImageMatcher.MatchResult(x, y,
+                (int) Math.round(maxX) - x, (int) Math.round(maxY) - y,
+                (double) homography.inlierCount / features.count);
+        result.scale = Math.sqrt(areaRatio);
+        return result;
+    }
+
+    // Area of the quadrilateral, or NaN if it is folded over (not convex in
+    // the template's winding), which no real view of a flat target gives
+    private static double convexArea(double[] xs, double[] ys) {
+        double area = 0;
+        int sign = 0;
+        for (int c = 0; c < 4; c++) {
+            int next = (c + 1) & 3;
+            int after = (c + 2) & 3;
+            double cross = (xs[next] - xs[c]) * (ys[after] - ys[next]) - (ys[next] - ys[c]) * (xs[after] - xs[next]);
+            int turn = cross > 0 ? 1 : -1;
+            if (sign != 0 && turn != sign) {
+                return Double.NaN;
+            }
+            sign = turn;
+            area += xs[c] * ys[next] - xs[next] * ys[c];
+        }
+        return sign > 0 ? Math.abs(area) / 2 : Double.NaN;
+    }
+}
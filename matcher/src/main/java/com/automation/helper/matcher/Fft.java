@@ -0,0 +1,110 @@
+package com.automation.helper.matcher;
+
+// Iterative radix-2 complex FFT over row-major width x height arrays (both
+// powers of two), with separate real and imaginary planes. Instances hold
+// the twiddle and bit-reversal tables for one size and a column scratch
+// buffer, so they are not thread-safe.
+final class Fft {
+    final int width;
+    final int height;
+    private final Table rows;
+    private final Table columns;
+    private final double[] columnRe;
+    private final double[] columnIm;
+
+    Fft(int width, int height) {
+        this.width = width;
+        this.height = height;
+        rows = new Table(width);
+        columns = width == height ? rows : new Table(height);
+        columnRe = new double[height];
+        columnIm = new double[height];
+    }
+
+    static int paddedSize(int n) {
+        return Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+    }
+
+    void forward(double[] re, double[] im) {
+        transform2d(re, im, false);
+    }
+
+    // Inverse transform including the 1 / (width * height) normalization
+    void inverse(double[] re, double[] im) {
+        transform2d(re, im, true);
+        double scale = 1.0 / ((double) width * height);
+        for (int i = 0; i < re.length; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform2d(double[] re, double[] im, boolean inverse) {
+        for (int y = 0; y < height; y++) {
+            rows.transform(re, im, y * width, inverse);
+        }
+        for (int x = 0; x < width; x++) {
+            for (int y = 0, i = x; y < height; y++, i += width) {
+                columnRe[y] = re[i];
+                columnIm[y] = im[i];
+            }
+            columns.transform(columnRe, columnIm, 0, inverse);
+            for (int y = 0, i = x; y < height; y++, i += width) {
+                re[i] = columnRe[y];
+                im[i] = columnIm[y];
+            }
+        }
+    }
+
+    private static final class Table {
+        final int n;
+        final int[] reversed;
+        final double[] cos;
+        final double[] sin;
+
+        Table(int n) {
+            this.n = n;
+            reversed = new int[n];
+            int bits = Integer.numberOfTrailingZeros(n);
+            for (int i = 0; i < n; i++) {
+                reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+            cos = new double[n / 2 + 1];
+            sin = new double[n / 2 + 1];
+            for (int i = 0; i < cos.length; i++) {
+                double angle = -2 * Math.PI * i / n;
+                cos[i] = Math.cos(angle);
+                sin[i] = Math.sin(angle);
+            }
+        }
+
+        void transform(double[] re, double[] im, int offset, boolean inverse) {
+            for (int i = 0; i < n; i++) {
+                int j = reversed[i];
+                if (j > i) {
+                    double t = re[offset + i]; re[offset + i] = re[offset + j]; re[offset + j] = t;
+                    t = im[offset + i]; im[offset + i] = im[offset + j]; im[offset + j] = t;
+                }
+            }
+            double sign = inverse ? -1 : 1;
+            for (int size = 2; size <= n; size <<= 1) {
+                int half = size >> 1;
+                int step = n / size;
+                for (int start = 0; start < n; start += size) {
+                    for (int k = 0; k < half; k++) {
+                        double wr = cos[k * step];
+                        double wi = sign * sin[k * step];
+                        int a = offset + start + k;
+                        int b = a + half;
+                        double tr = re[b] * wr - im[b] * wi;
+                        double ti = re[b] * wi + im[b] * wr;
+                        re[b] = re[a] - tr;
+                        im[b] = im[a] - ti;
+                        re[a] += tr;
+                        im[a] += ti;
+                    }
+                }
+            }
+        }
+    }
+}
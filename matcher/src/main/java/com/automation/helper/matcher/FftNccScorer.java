@@ -0,0 +1,188 @@
+package com.automation.helper.matcher;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// MatchMode.NCC computed in the frequency domain. The cross term for every
+// position comes from one forward and one inverse FFT of the source against
+// the cached spectrum of the zero-mean template (the source's forward
+// transform is shared through SourceImage); window statistics still come
+// from the integral image. Scores equal NccScorer up to rounding (~1e-9).
+final class FftNccScorer implements WindowScorer {
+    // Relative cost of one FFT butterfly pass per padded pixel against one
+    // spatial multiply-accumulate, measured with MatcherBenchmark
+    static final double FFT_COST_FACTOR = 9.0;
+    // Larger transforms cost too much memory on a tablet (16 bytes per pixel)
+    static final int MAX_FFT_AREA = 1 << 20;
+    // Total padded pixels of template spectra kept across calls
+    private static final long CACHE_BUDGET = 2L << 20;
+    private static final Map<SpectrumKey, Spectrum> SPECTRA = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedArea;
+
+    private final double[] correlation;
+    private final int stride;
+    private final IntegralImage integral;
+    private final GrayImage template;
+    private final long count;
+    private final double templateVariance;
+
+    FftNccScorer(SourceImage source, int level, GrayImage template) {
+        GrayImage sourceLevel = source.level(level);
+        this.integral = source.integral(level);
+        this.template = template;
+        this.count = (long) template.width * template.height;
+
+        Fft fft = new Fft(Fft.paddedSize(sourceLevel.width), Fft.paddedSize(sourceLevel.height));
+        Spectrum spectrum = spectrum(template, fft);
+        this.templateVariance = spectrum.variance;
+        double[][] sourceSpectrum = source.spectrum(level, fft);
+        double[] sourceRe = sourceSpectrum[0];
+        double[] sourceIm = sourceSpectrum[1];
+
+        // Cross-correlation is S * conj(T) in the frequency domain
+        double[] re = new double[sourceRe.length];
+        double[] im = new double[re.length];
+        for (int i = 0; i < re.length; i++) {
+            double a = sourceRe[i];
+            double b = sourceIm[i];
+            double c = spectrum.re[i];
+            double d = spectrum.im[i];
+            re[i] = a * c + b * d;
+            im[i] = b * c - a * d;
+        }
+        fft.inverse(re, im);
+
+        this.correlation = re;
+        this.stride = fft.width;
+    }
+
+    // Cost model for an exhaustive scan of every position of template over
+    // source. FFT_COST_FACTOR covers the forward and the inverse transform; once
+    // the source's forward transform is shared, only the inverse is left.
+    static boolean preferred(GrayImage source, GrayImage template, boolean sourceTransformed) {
+        if (!fits(source)) {
+            return false;
+        }
+        long paddedArea = (long) Fft.paddedSize(source.width) * Fft.paddedSize(source.height);
+        double positions = (double) (source.width - template.width + 1) * (source.height - template.height + 1);
+        double spatial = positions * template.width * template.height;
+        double factor = sourceTransformed ? FFT_COST_FACTOR / 2 : FFT_COST_FACTOR;
+        double frequency = factor * paddedArea * (Math.log(paddedArea) / Math.log(2));
+        return frequency < spatial;
+    }
+
+    // Whether source pads to at most MAX_FFT_AREA, whatever the backend asked for
+    static boolean fits(GrayImage source) {
+        return (long) Fft.paddedSize(source.width) * Fft.paddedSize(source.height) <= MAX_FFT_AREA;
+    }
+
+    @Override
+    public double score(int startX, int startY) {
+        if (templateVariance <= 0) {
+            return 0;
+        }
+        long windowSum = integral.sum(startX, startY, template.width, template.height);
+        long windowVariance = count * integral.sumSquares(startX, startY, template.width, template.height)
+                - windowSum * windowSum;
+        if (windowVariance <= 0) {
+            return 0;
+        }
+        // correlation holds sum(s * (t - mean t)); scale it to NccScorer's numerator
+        return count * correlation[startY * stride + startX] / Math.sqrt(windowVariance * templateVariance);
+    }
+
+    private static Spectrum spectrum(GrayImage template, Fft fft) {
+        SpectrumKey key = new SpectrumKey(template, fft.width, fft.height);
+        synchronized (SPECTRA) {
+            Spectrum cached = SPECTRA.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long sum = 0;
+        long squares = 0;
+        for (byte b : template.data) {
+            int v = b & 0xFF;
+            sum += v;
+            squares += v * v;
+        }
+        double mean = (double) sum / template.data.length;
+
+        double[] re = new double[fft.width * fft.height];
+        double[] im = new double[re.length];
+        for (int y = 0; y < template.height; y++) {
+            for (int x = 0; x < template.width; x++) {
+                re[y * fft.width + x] = (template.data[y * template.width + x] & 0xFF) - mean;
+            }
+        }
+        fft.forward(re, im);
+        Spectrum spectrum = new Spectrum(re, im, (double) (template.data.length * squares - sum * sum));
+
+        synchronized (SPECTRA) {
+            if (SPECTRA.put(key, spectrum) == null) {
+                cachedArea += re.length;
+            }
+            Iterator<Map.Entry<SpectrumKey, Spectrum>> eldest = SPECTRA.entrySet().iterator();
+            while (cachedArea > CACHE_BUDGET && eldest.hasNext()) {
+                Map.Entry<SpectrumKey, Spectrum> entry = eldest.next();
+                if (entry.getValue() == spectrum) {
+                    break;
+                }
+                cachedArea -= entry.getValue().re.length;
+                eldest.remove();
+            }
+        }
+        return spectrum;
+    }
+
+    private static final class Spectrum {
+        final double[] re;
+        final double[] im;
+        // count * sum(t^2) - sum(t)^2, as in NccScorer
+        final double variance;
+
+        Spectrum(double[] re, double[] im, double variance) {
+            this.re = re;
+            this.im = im;
+            this.variance = variance;
+        }
+    }
+
+    // Keyed by template content, so equal templates decoded twice share a spectrum
+    private static final class SpectrumKey {
+        final int width;
+        final int height;
+        final int paddedWidth;
+        final int paddedHeight;
+        final byte[] data;
+        final int hash;
+
+        SpectrumKey(GrayImage template, int paddedWidth, int paddedHeight) {
+            this.width = template.width;
+            this.height = template.height;
+            this.paddedWidth = paddedWidth;
+            this.paddedHeight = paddedHeight;
+            this.data = template.data;
+            this.hash = 31 * (31 * (31 * Arrays.hashCode(data) + width) + paddedWidth) + paddedHeight;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SpectrumKey)) {
+                return false;
+            }
+            SpectrumKey other = (SpectrumKey) o;
+            return width == other.width && height == other.height
+                    && paddedWidth == other.paddedWidth && paddedHeight == other.paddedHeight
+                    && Arrays.equals(data, other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.automation.helper.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Cheap fingerprint of a frame for spotting what changed between two
+// captures: one 64-bit hash per TILE x TILE block of R, G and B, each
+// downsampled 2x2 and coarsely quantised so one-level flicker rarely
+// registers. All three channels, not luma alone, since SAD compares colour:
+// red turning into a green of the same brightness is a change. Building one
+// reads every pixel once, a few milliseconds against tens for a search.
+public final class FrameGrid {
+    // Tile side in pixels
+    public static final int TILE = 32;
+    // Low bits of each channel's 2x2 sum dropped before hashing
+    private static final int QUANTISE_SHIFT = 3;
+
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    private final long[] hashes;
+
+    private FrameGrid(int width, int height, int columns, int rows, long[] hashes) {
+        this.width = width;
+        this.height = height;
+        this.columns = columns;
+        this.rows = rows;
+        this.hashes = hashes;
+    }
+
+    public static FrameGrid of(PixelBuffer frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int columns = (width + TILE - 1) / TILE;
+        int rows = (height + TILE - 1) / TILE;
+        long[] hashes = new long[columns * rows];
+        Arrays.fill(hashes, 0xCBF29CE484222325L);
+        int[] pixels = frame.getPixels();
+        int stride = frame.getStride();
+        // Odd last rows and columns pair with themselves
+        for (int y = 0; y < height; y += 2) {
+            int top = frame.getOffset() + y * stride;
+            int bottom = frame.getOffset() + Math.min(y + 1, height - 1) * stride;
+            int tileRow = (y / TILE) * columns;
+            for (int x = 0; x < width; x += 2) {
+                int right = Math.min(x + 1, width - 1);
+                int a = pixels[top + x];
+                int b = pixels[top + right];
+                int c = pixels[bottom + x];
+                int d = pixels[bottom + right];
+                // Channel sums side by side: 10 bits each, none carries into the next
+                int total = (a & 0xFF00FF) + (b & 0xFF00FF) + (c & 0xFF00FF) + (d & 0xFF00FF);
+                int green = ((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF);
+                int quantised = ((total >> 16) >> QUANTISE_SHIFT) << 20
+                        | (green >> QUANTISE_SHIFT) << 10
+                        | (total & 0x3FF) >> QUANTISE_SHIFT;
+                int tile = tileRow + x / TILE;
+                // FNV-1a over the quantised sums, in scan order within the tile
+                hashes[tile] = (hashes[tile] ^ quantised) * 0x100000001B3L;
+            }
+        }
+        return new FrameGrid(width, height, columns, rows, hashes);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    // Whether previous describes a frame of the same size, so tiles compare
+    public boolean comparable(FrameGrid previous) {
+        return previous != null && previous.width == width && previous.height == height;
+    }
+
+    // Whether any tile overlapping the rectangle differs from previous; true
+    // when the grids are not comparable
+    public boolean changed(FrameGrid previous, int x, int y, int w, int h) {
+        if (!comparable(previous)) {
+            return true;
+        }
+        int column0 = Math.max(0, x / TILE);
+        int row0 = Math.max(0, y / TILE);
+        int column1 = Math.min(columns - 1, (x + w - 1) / TILE);
+        int row1 = Math.min(rows - 1, (y + h - 1) / TILE);
+        for (int row = row0; row <= row1; row++) {
+            for (int column = column0; column <= column1; column++) {
+                int tile = row * columns + column;
+                if (hashes[tile] != previous.hashes[tile]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Tiles that differ from previous, merged into rectangles: runs of
+    // changed tiles along each tile row, stacked where consecutive rows have
+    // the same run. Clipped to the frame. The whole frame when the grids are
+    // not comparable; empty when nothing changed.
+    public List<Rect> dirtyRects(FrameGrid previous) {
+        List<Rect> rects = new ArrayList<>();
+        if (!comparable(previous)) {
+            rects.add(new Rect(0, 0, width, height));
+            return rects;
+        }
+        // Runs of the previous tile row still open, as indices into rects
+        List<Integer> open = new ArrayList<>();
+        List<Integer> next = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            next.clear();
+            int column = 0;
+            while (column < columns) {
+                int tile = row * columns + column;
+                if (hashes[tile] == previous.hashes[tile]) {
+                    column++;
+                    continue;
+                }
+                int start = column;
+                while (column < columns && hashes[row * columns + column] != previous.hashes[row * columns + column]) {
+                    column++;
+                }
+                int x = start * TILE;
+                int w = Math.min(width, column * TILE) - x;
+                int y = row * TILE;
+                int h = Math.min(height, (row + 1) * TILE) - y;
+                Integer extended = null;
+                for (Integer index : open) {
+                    Rect above = rects.get(index);
+                    if (above.x == x && above.width == w) {
+                        rects.set(index, new Rect(x, above.y, w, above.height + h));
+                        extended = index;
+                        break;
+                    }
+                }
+                if (extended == null) {
+                    rects.add(new Rect(x, y, w, h));
+                    extended = rects.size() - 1;
+                }
+                next.add(extended);
+            }
+            List<Integer> swap = open;
+            open = next;
+            next = swap;
+        }
+        return rects;
+    }
+
+    public static final class Rect {
+        public final int x, y;
+        public final int width, height;
+
+        public Rect(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + ", " + y + ") " + width + "x" + height;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.automation.helper.matcher;
+
+// 8-bit luma plane, row-major with stride == width
+final class GrayImage {
+    final int width;
+    final int height;
+    final byte[] data;
+
+    GrayImage(int width, int height, byte[] data) {
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    static GrayImage of(PixelBuffer buffer) {
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        int[] pixels = buffer.getPixels();
+        int stride = buffer.getStride();
+        byte[] data = new byte[width * height];
+
+        int row = buffer.getOffset();
+        int out = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                data[out++] = (byte) luma(pixels[row + x]);
+            }
+            row += stride;
+        }
+        return new GrayImage(width, height, data);
+    }
+
+    // Half-resolution copy, each pixel the rounded mean of a 2x2 block
+    GrayImage downsample() {
+        int halfWidth = Math.max(1, width / 2);
+        int halfHeight = Math.max(1, height / 2);
+        byte[] half = new byte[halfWidth * halfHeight];
+        for (int y = 0; y < halfHeight; y++) {
+            int top = Math.min(2 * y, height - 1) * width;
+            int bottom = Math.min(2 * y + 1, height - 1) * width;
+            for (int x = 0; x < halfWidth; x++) {
+                int left = Math.min(2 * x, width - 1);
+                int right = Math.min(2 * x + 1, width - 1);
+                int total = (data[top + left] & 0xFF) + (data[top + right] & 0xFF)
+                        + (data[bottom + left] & 0xFF) + (data[bottom + right] & 0xFF);
+                half[y * halfWidth + x] = (byte) ((total + 2) >> 2);
+            }
+        }
+        return new GrayImage(halfWidth, halfHeight, half);
+    }
+
+    // Integer approximation of (299 R + 587 G + 114 B) / 1000
+    static int luma(int argb) {
+        return (((argb >> 16) & 0xFF) * 306 + ((argb >> 8) & 0xFF) * 601 + (argb & 0xFF) * 117) >> 10;
+    }
+}
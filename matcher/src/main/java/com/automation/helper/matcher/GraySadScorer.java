@@ -0,0 +1,125 @@
+package com.automation.helper.matcher;
+
+// Luma-only counterpart of SadScorer, used on coarse pyramid levels
+final class GraySadScorer implements WindowScorer {
+    // Template blocks per side for the block-sum lower bound
+    private static final int BLOCK_GRID = 4;
+
+    private final GrayImage source;
+    private final GrayImage template;
+    private final long maxDiff;
+    // Early-abandon order: source offset relative to the window origin and
+    // template value of each pixel, most distinctive first
+    private final int[] orderedOffsets;
+    private final int[] orderedValues;
+    // Masked or sparse template: only the ordered pixels are compared
+    private final boolean sampled;
+    // Block-sum lower bound, only set up for exhaustive scans: the SAD over a
+    // block is at least the difference of the block sums, which the integral
+    // image gives in four lookups
+    private final IntegralImage sourceIntegral;
+    private final int[] blockRects;
+    private final long[] blockSums;
+
+    GraySadScorer(GrayImage source, CompiledTemplate.Level template) {
+        this(source, null, template);
+    }
+
+    GraySadScorer(GrayImage source, IntegralImage sourceIntegral, CompiledTemplate.Level level) {
+        this.source = source;
+        this.template = level.gray;
+        this.maxDiff = 255L * level.count();
+        this.sampled = level.samples != null;
+
+        int[] order = level.order;
+        orderedOffsets = new int[order.length];
+        orderedValues = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            orderedOffsets[k] = (i / template.width) * source.width + i % template.width;
+            orderedValues[k] = template.data[i] & 0xFF;
+        }
+
+        this.sourceIntegral = sourceIntegral;
+        int grid = Math.min(BLOCK_GRID, Math.min(template.width, template.height));
+        if (sourceIntegral == null || sampled || grid < 2) {
+            blockRects = null;
+            blockSums = null;
+            return;
+        }
+        IntegralImage templateIntegral = level.integral;
+        blockRects = new int[grid * grid * 4];
+        blockSums = new long[grid * grid];
+        int b = 0;
+        for (int by = 0; by < grid; by++) {
+            int y0 = by * template.height / grid;
+            int y1 = (by + 1) * template.height / grid;
+            for (int bx = 0; bx < grid; bx++) {
+                int x0 = bx * template.width / grid;
+                int x1 = (bx + 1) * template.width / grid;
+                blockRects[b * 4] = x0;
+                blockRects[b * 4 + 1] = y0;
+                blockRects[b * 4 + 2] = x1 - x0;
+                blockRects[b * 4 + 3] = y1 - y0;
+                blockSums[b] = templateIntegral.sum(x0, y0, x1 - x0, y1 - y0);
+                b++;
+            }
+        }
+    }
+
+    @Override
+    public double score(int startX, int startY) {
+        if (sampled) {
+            return scoreOrdered(startX, startY, Double.POSITIVE_INFINITY);
+        }
+        byte[] sourceData = source.data;
+        byte[] templateData = template.data;
+        long totalDiff = 0;
+        int sourceRow = startY * source.width + startX;
+        int templateRow = 0;
+        for (int y = 0; y < template.height; y++) {
+            int rowDiff = 0;
+            for (int x = 0; x < template.width; x++) {
+                rowDiff += Math.abs((sourceData[sourceRow + x] & 0xFF) - (templateData[templateRow + x] & 0xFF));
+            }
+            totalDiff += rowDiff;
+            sourceRow += source.width;
+            templateRow += template.width;
+        }
+        return 1.0 - ((double) totalDiff / maxDiff);
+    }
+
+    @Override
+    public double score(int startX, int startY, double floor) {
+        // Any difference above this leaves the score at or below floor
+        double budget = (1.0 - floor) * maxDiff;
+        if (blockRects != null && budget < maxDiff) {
+            int[] rects = blockRects;
+            long bound = 0;
+            for (int b = 0; b < blockSums.length; b++) {
+                int r = b * 4;
+                bound += Math.abs(sourceIntegral.sum(startX + rects[r], startY + rects[r + 1],
+                        rects[r + 2], rects[r + 3]) - blockSums[b]);
+            }
+            if (bound > budget) {
+                return Double.NEGATIVE_INFINITY;
+            }
+        }
+        return scoreOrdered(startX, startY, budget);
+    }
+
+    private double scoreOrdered(int startX, int startY, double budget) {
+        byte[] sourceData = source.data;
+        int[] offsets = orderedOffsets;
+        int[] values = orderedValues;
+        int base = startY * source.width + startX;
+        long totalDiff = 0;
+        for (int k = 0; k < offsets.length; k++) {
+            totalDiff += Math.abs((sourceData[base + offsets[k]] & 0xFF) - values[k]);
+            if (totalDiff > budget) {
+                return Double.NEGATIVE_INFINITY;
+            }
+        }
+        return 1.0 - ((double) totalDiff / maxDiff);
+    }
+}
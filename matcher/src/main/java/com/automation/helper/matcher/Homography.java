@@ -0,0 +1,240 @@
+package com.automation.helper.matcher;
+
+import java.util.Random;
+
+// Plane-to-plane projective map, estimated with RANSAC from keypoint
+// correspondences for MatchMode.FEATURES
+final class Homography {
+    // Reprojection error, in source pixels, below which a match agrees
+    private static final double INLIER_DISTANCE = 3.0;
+    private static final int MAX_ITERATIONS = 1000;
+    // Stop once a sample of four inliers has been drawn with this confidence
+    private static final double CONFIDENCE = 0.995;
+
+    // Row-major 3x3 with h[8] = 1
+    private final double[] h;
+    // Correspondences consistent with h, by index into the fitted arrays
+    final boolean[] inliers;
+    final int inlierCount;
+
+    private Homography(double[] h, boolean[] inliers, int inlierCount) {
+        this.h = h;
+        this.inliers = inliers;
+        this.inlierCount = inlierCount;
+    }
+
+    double mapX(double x, double y) {
+        return (h[0] * x + h[1] * y + h[2]) / (h[6] * x + h[7] * y + 1);
+    }
+
+    double mapY(double x, double y) {
+        return (h[3] * x + h[4] * y + h[5]) / (h[6] * x + h[7] * y + 1);
+    }
+
+    // Map from (fromX, fromY) to (toX, toY) agreed on by the most pairs, refitted
+    // to all of them; null with fewer than four pairs or no consistent sample.
+    // Seeded, so the same input always gives the same answer.
+    static Homography ransac(double[] fromX, double[] fromY, double[] toX, double[] toY, int count) {
+        if (count < 4) {
+            return null;
+        }
+        Random random = new Random(count);
+        int[] sample = new int[4];
+        double[] best = null;
+        int bestCount = 0;
+        int iterations = MAX_ITERATIONS;
+        for (int i = 0; i < iterations; i++) {
+            if (!drawSample(random, count, sample)) {
+                continue;
+            }
+            double[] candidate = fit(fromX, fromY, toX, toY, sample, 4);
+            if (candidate == null) {
+                continue;
+            }
+            int agreeing = countInliers(candidate, fromX, fromY, toX, toY, count, null);
+            if (agreeing > bestCount) {
+                bestCount = agreeing;
+                best = candidate;
+                double inlierRatio = (double) agreeing / count;
+                double allInliers = Math.pow(inlierRatio, 4);
+                if (allInliers >= 1) {
+                    break;
+                }
+                iterations = Math.min(MAX_ITERATIONS,
+                        (int) Math.ceil(Math.log(1 - CONFIDENCE) / Math.log(1 - allInliers)));
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+
+        boolean[] inliers = new boolean[count];
+        countInliers(best, fromX, fromY, toX, toY, count, inliers);
+        int[] all = new int[bestCount];
+        for (int i = 0, k = 0; i < count; i++) {
+            if (inliers[i]) {
+                all[k++] = i;
+            }
+        }
+        double[] refined = fit(fromX, fromY, toX, toY, all, all.length);
+        if (refined != null) {
+            boolean[] refinedInliers = new boolean[count];
+            int refinedCount = countInliers(refined, fromX, fromY, toX, toY, count, refinedInliers);
+            if (refinedCount >= bestCount) {
+                return new Homography(refined, refinedInliers, refinedCount);
+            }
+        }
+        return new Homography(best, inliers, bestCount);
+    }
+
+    private static boolean drawSample(Random random, int count, int[] sample) {
+        for (int i = 0; i < 4; i++) {
+            int pick = random.nextInt(count);
+            for (int j = 0; j < i; j++) {
+                if (sample[j] == pick) {
+                    return false;
+                }
+            }
+            sample[i] = pick;
+        }
+        return true;
+    }
+
+    private static int countInliers(double[] h, double[] fromX, double[] fromY, double[] toX, double[] toY,
+                                    int count, boolean[] out) {
+        double maxSquared = INLIER_DISTANCE * INLIER_DISTANCE;
+        int inliers = 0;
+        for (int i = 0; i < count; i++) {
+            double w = h[6] * fromX[i] + h[7] * fromY[i] + 1;
+            double dx = (h[0] * fromX[i] + h[1] * fromY[i] + h[2]) / w - toX[i];
+            double dy = (h[3] * fromX[i] + h[4] * fromY[i] + h[5]) / w - toY[i];
+            boolean agrees = w > 0 && dx * dx + dy * dy <= maxSquared;
+            if (out != null) {
+                out[i] = agrees;
+            }
+            if (agrees) {
+                inliers++;
+            }
+        }
+        return inliers;
+    }
+
+    // Least-squares fit (exact for four pairs) of the pairs listed in idx.
+    // Both point sets are centred and scaled first, which keeps the normal
+    // equations well conditioned for screen-sized coordinates.
+    private static double[] fit(double[] fromX, double[] fromY, double[] toX, double[] toY, int[] idx, int n) {
+        double[] from = normalisation(fromX, fromY, idx, n);
+        double[] to = normalisation(toX, toY, idx, n);
+
+        double[] ata = new double[64];
+        double[] atb = new double[8];
+        double[] row = new double[8];
+        for (int k = 0; k < n; k++) {
+            int i = idx[k];
+            double x = (fromX[i] - from[0]) * from[2];
+            double y = (fromY[i] - from[1]) * from[2];
+            double u = (toX[i] - to[0]) * to[2];
+            double v = (toY[i] - to[1]) * to[2];
+            for (int r = 0; r < 2; r++) {
+                if (r == 0) {
+                    row[0] = x; row[1] = y; row[2] = 1; row[3] = 0; row[4] = 0; row[5] = 0;
+                    row[6] = -u * x; row[7] = -u * y;
+                } else {
+                    row[0] = 0; row[1] = 0; row[2] = 0; row[3] = x; row[4] = y; row[5] = 1;
+                    row[6] = -v * x; row[7] = -v * y;
+                }
+                double target = r == 0 ? u : v;
+                for (int a = 0; a < 8; a++) {
+                    atb[a] += row[a] * target;
+                    for (int b = 0; b < 8; b++) {
+                        ata[a * 8 + b] += row[a] * row[b];
+                    }
+                }
+            }
+        }
+        double[] hn = solve(ata, atb);
+        if (hn == null) {
+            return null;
+        }
+
+        // h = T_to^-1 * hn * T_from, with T = [s 0 -s*cx; 0 s -s*cy; 0 0 1]
+        double sf = from[2], cfx = from[0], cfy = from[1];
+        double st = to[2], ctx = to[0], cty = to[1];
+        double[] m = {
+                hn[0] * sf, hn[1] * sf, hn[2] - hn[0] * sf * cfx - hn[1] * sf * cfy,
+                hn[3] * sf, hn[4] * sf, hn[5] - hn[3] * sf * cfx - hn[4] * sf * cfy,
+                hn[6] * sf, hn[7] * sf, 1 - hn[6] * sf * cfx - hn[7] * sf * cfy };
+        double[] h = new double[9];
+        for (int c = 0; c < 3; c++) {
+            h[c] = m[c] / st + ctx * m[6 + c];
+            h[3 + c] = m[3 + c] / st + cty * m[6 + c];
+            h[6 + c] = m[6 + c];
+        }
+        if (Math.abs(h[8]) < 1e-12) {
+            return null;
+        }
+        for (int i = 0; i < 9; i++) {
+            h[i] /= h[8];
+        }
+        return h;
+    }
+
+    // {centre x, centre y, scale} bringing the points to mean distance sqrt(2)
+    private static double[] normalisation(double[] xs, double[] ys, int[] idx, int n) {
+        double cx = 0, cy = 0;
+        for (int k = 0; k < n; k++) {
+            cx += xs[idx[k]];
+            cy += ys[idx[k]];
+        }
+        cx /= n;
+        cy /= n;
+        double spread = 0;
+        for (int k = 0; k < n; k++) {
+            spread += Math.hypot(xs[idx[k]] - cx, ys[idx[k]] - cy);
+        }
+        spread /= n;
+        return new double[] { cx, cy, spread > 0 ? Math.sqrt(2) / spread : 1 };
+    }
+
+    // Gaussian elimination with partial pivoting on an 8x8 system; null if singular
+    private static double[] solve(double[] a, double[] b) {
+        int n = 8;
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < n; r++) {
+                if (Math.abs(a[r * n + col]) > Math.abs(a[pivot * n + col])) {
+                    pivot = r;
+                }
+            }
+            if (Math.abs(a[pivot * n + col]) < 1e-10) {
+                return null;
+            }
+            if (pivot != col) {
+                for (int c = 0; c < n; c++) {
+                    double t = a[col * n + c];
+                    a[col * n + c] = a[pivot * n + c];
+                    a[pivot * n + c] = t;
+                }
+                double t = b[col];
+                b[col] = b[pivot];
+                b[pivot] = t;
+            }
+            for (int r = col + 1; r < n; r++) {
+                double factor = a[r * n + col] / a[col * n + col];
+                for (int c = col; c < n; c++) {
+                    a[r * n + c] -= factor * a[col * n + c];
+                }
+                b[r] -= factor * b[col];
+            }
+        }
+        double[] x = new double[n];
+        for (int r = n - 1; r >= 0; r--) {
+            double total = b[r];
+            for (int c = r + 1; c < n; c++) {
+                total -= a[r * n + c] * x[c];
+            }
+            x[r] = total / a[r * n + r];
+        }
+        return x;
+    }
+}
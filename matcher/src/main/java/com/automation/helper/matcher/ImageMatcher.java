@@ -0,0 +1,407 @@
+package com.automation.helper.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Logger;
+
+public class ImageMatcher {
+    private static final Logger LOG = Logger.getLogger("ImageMatcher");
+    static final double DEFAULT_THRESHOLD = 0.8; // 80% similarity
+    // MatchMode.FEATURES: 15% of the template's keypoints agreeing
+    static final double DEFAULT_FEATURES_THRESHOLD = 0.15;
+    // Pixels around the previous hit searched first (MatchOptions.near)
+    static final int HINT_MARGIN = 32;
+    // Share of the way from threshold to a perfect score a hit near the hint
+    // must reach to skip the whole search: at 0.8, 0.95
+    static final double HINT_ACCEPT = 0.75;
+
+    // Threads used by the dedicated search pool (default: one per core).
+    // 1 runs every search on the calling thread.
+    public static void setParallelism(int threads) {
+        SearchPool.setParallelism(threads);
+    }
+
+    // Find template image in source image
+    public static MatchResult findImage(PixelBuffer source, PixelBuffer template) {
+        return findImage(source, template, DEFAULT_THRESHOLD);
+    }
+
+    public static MatchResult findImage(PixelBuffer source, PixelBuffer template, double threshold) {
+        return findImage(source, template, new MatchOptions().threshold(threshold));
+    }
+
+    // See MatchMode for how threshold is interpreted in each mode
+    public static MatchResult findImage(PixelBuffer source, PixelBuffer template,
+                                        double threshold, MatchMode mode) {
+        return findImage(source, template, new MatchOptions().threshold(threshold).mode(mode));
+    }
+
+    // Looks template up in the CompiledTemplate cache on every call, which
+    // reads all of its pixels; for repeated searches of one template, compile
+    // it once with CompiledTemplate.of and use the overload below
+    public static MatchResult findImage(PixelBuffer source, PixelBuffer template, MatchOptions options) {
+        if (source == null || template == null) {
+            LOG.warning("Source or template is null");
+            return null;
+        }
+        CompiledTemplate compiled = compile(template);
+        return compiled != null ? findNear(source, compiled, options) : null;
+    }
+
+    // For callers that keep the compiled template, e.g. per scenario step:
+    // no template pixel is touched before the search itself
+    public static MatchResult findImage(PixelBuffer source, CompiledTemplate template, MatchOptions options) {
+        if (source == null || template == null) {
+            LOG.warning("Source or template is null");
+            return null;
+        }
+        return findNear(source, template, options);
+    }
+
+    // Search one frame for several templates, e.g. the "OK", "Retry" and
+    // "Close ad" buttons. The source's gray pyramid, integral images and FFTs
+    // are built once and shared. Result i belongs to templates.get(i) and is
+    // null when that template was not found.
+    public static List<MatchResult> findAll(PixelBuffer source, List<PixelBuffer> templates,
+                                            MatchOptions options) {
+        options = orDefault(options);
+        List<MatchResult> results = new ArrayList<>(templates.size());
+        int[] area = source != null ? searchArea(source, options) : null;
+        if (area == null) {
+            LOG.warning(source == null ? "Source is null" : "Search region is outside the source");
+            for (int i = 0; i < templates.size(); i++) {
+                results.add(null);
+            }
+            return results;
+        }
+        SourceImage shared = new SourceImage(source.region(area[0], area[1], area[2], area[3]));
+        for (int i = 0; i < templates.size(); i++) {
+            PixelBuffer template = templates.get(i);
+            if (template == null) {
+                LOG.warning("Template " + i + " is null");
+                results.add(null);
+                continue;
+            }
+            CompiledTemplate compiled = compile(template);
+            results.add(compiled != null ? find(shared, area[0], area[1], compiled, i, options) : null);
+        }
+        return results;
+    }
+
+    // First template, in list order, that is on screen; templates after it are
+    // not searched. Order templates by priority. MatchResult.templateIndex
+    // says which one matched.
+    public static MatchResult findAny(PixelBuffer source, List<PixelBuffer> templates, MatchOptions options) {
+        options = orDefault(options);
+        int[] area = source != null ? searchArea(source, options) : null;
+        if (area == null) {
+            LOG.warning(source == null ? "Source is null" : "Search region is outside the source");
+            return null;
+        }
+        SourceImage shared = new SourceImage(source.region(area[0], area[1], area[2], area[3]));
+        for (int i = 0; i < templates.size(); i++) {
+            PixelBuffer template = templates.get(i);
+            if (template == null) {
+                LOG.warning("Template " + i + " is null");
+                continue;
+            }
+            CompiledTemplate compiled = compile(template);
+            MatchResult result = compiled != null ? find(shared, area[0], area[1], compiled, i, options) : null;
+            if (result != null) {
+                return result;
+            }
+            if (options.getCancellation() != null && options.getCancellation().isCancelled()) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // Every location where template scores at least the threshold, best
+    // first, e.g. all rows of a list or slots of an inventory grid. Overlapping
+    // hits are reduced to the best one (see MatchOptions.maxOverlap) and at
+    // most MatchOptions.maxResults are returned. Empty when nothing matches.
+    public static List<MatchResult> findAllImages(PixelBuffer source, PixelBuffer template,
+                                                  MatchOptions options) {
+        if (source == null || template == null) {
+            LOG.warning("Source or template is null");
+            return new ArrayList<>();
+        }
+        CompiledTemplate compiled = compile(template);
+        return compiled != null ? findAllImages(source, compiled, options) : new ArrayList<>();
+    }
+
+    public static List<MatchResult> findAllImages(PixelBuffer source, CompiledTemplate template,
+                                                  MatchOptions options) {
+        List<MatchResult> results = new ArrayList<>();
+        if (source == null || template == null) {
+            LOG.warning("Source or template is null");
+            return results;
+        }
+        options = orDefault(options);
+        if (options.getMode() == MatchMode.FEATURES) {
+            // One homography places one instance
+            LOG.warning("findAllImages does not separate instances in FEATURES mode; returning the best");
+            MatchResult best = findNear(source, template, options);
+            if (best != null) {
+                results.add(best);
+            }
+            return results;
+        }
+        template = template.sampled(options.getSamples());
+        if (options.getMode() == MatchMode.NCC && template.level(0).isFlat()) {
+            LOG.warning("Template has no contrast; NCC is undefined");
+            return results;
+        }
+
+        int[] area = searchArea(source, options);
+        if (area == null) {
+            LOG.warning("Search region is outside the source");
+            return results;
+        }
+        SourceImage shared = new SourceImage(source.region(area[0], area[1], area[2], area[3]));
+        double scale = options.getMinScale();
+        CompiledTemplate scaled = template.scaled(scale);
+        if (options.getMaxScale() != scale) {
+            // Repeated items share one scale: take the best match's
+            ScaleSearch.Match match;
+            try {
+                match = ScaleSearch.search(shared, template, options);
+            } catch (CancellationException e) {
+                LOG.fine("Search cancelled");
+                return results;
+            }
+            if (match == null || match.best.size() == 0 || match.best.score(0) < options.getThreshold()) {
+                LOG.fine("No match found above threshold: " + options.getThreshold());
+                return results;
+            }
+            scale = match.scale;
+            scaled = match.template;
+        }
+        int templateWidth = scaled.getWidth();
+        int templateHeight = scaled.getHeight();
+        if (templateWidth > area[2] || templateHeight > area[3]) {
+            LOG.warning("Template is larger than source");
+            return results;
+        }
+
+        // Coarse peaks are ranked approximately, so keep spares for the
+        // ones that drop out on refinement or overlap another
+        int capacity = Math.max(options.getCandidates(), 2 * options.getMaxResults());
+        PeakHeap peaks;
+        try {
+            peaks = PeakSearch.search(shared, scaled, options, capacity);
+        } catch (CancellationException e) {
+            LOG.fine("Search cancelled");
+            return results;
+        }
+
+        for (int i = 0; i < peaks.size() && results.size() < options.getMaxResults(); i++) {
+            if (peaks.score(i) < options.getThreshold()) {
+                break;
+            }
+            MatchResult candidate = new MatchResult(area[0] + peaks.x(i), area[1] + peaks.y(i),
+                    templateWidth, templateHeight, peaks.score(i));
+            if (!overlapsAny(candidate, results, options.getMaxOverlap())) {
+                candidate.scale = scale;
+                results.add(candidate);
+            }
+        }
+        LOG.fine("Found " + results.size() + " matches above threshold: " + options.getThreshold());
+        return results;
+    }
+
+    // Greedy non-maximum suppression: kept holds better results only
+    private static boolean overlapsAny(MatchResult candidate, List<MatchResult> kept, double maxOverlap) {
+        for (MatchResult other : kept) {
+            int overlapWidth = Math.min(candidate.x + candidate.width, other.x + other.width)
+                    - Math.max(candidate.x, other.x);
+            int overlapHeight = Math.min(candidate.y + candidate.height, other.y + other.height)
+                    - Math.max(candidate.y, other.y);
+            if (overlapWidth <= 0 || overlapHeight <= 0) {
+                continue;
+            }
+            double intersection = (double) overlapWidth * overlapHeight;
+            double union = (double) candidate.width * candidate.height
+                    + (double) other.width * other.height - intersection;
+            if (intersection / union > maxOverlap) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Previous hit first, if the options have one, then the whole search area
+    private static MatchResult findNear(PixelBuffer source, CompiledTemplate template, MatchOptions options) {
+        options = orDefault(options);
+        int[] area = searchArea(source, options);
+        if (area == null) {
+            LOG.warning("Search region is outside the source");
+            return null;
+        }
+        if (options.hasHint()) {
+            // Large enough for the template at any scale the options allow
+            int width = (int) Math.ceil(template.getWidth() * options.getMaxScale());
+            int height = (int) Math.ceil(template.getHeight() * options.getMaxScale());
+            int x0 = Math.max(area[0], options.getHintX() - HINT_MARGIN);
+            int y0 = Math.max(area[1], options.getHintY() - HINT_MARGIN);
+            int x1 = Math.min(area[0] + area[2], options.getHintX() + width + HINT_MARGIN);
+            int y1 = Math.min(area[1] + area[3], options.getHintY() + height + HINT_MARGIN);
+            boolean whole = x1 - x0 == area[2] && y1 - y0 == area[3];
+            if (!whole && x1 - x0 >= width && y1 - y0 >= height) {
+                MatchResult near = find(new SourceImage(source.region(x0, y0, x1 - x0, y1 - y0)), x0, y0,
+                        template, 0, options);
+                double accept = options.getThreshold() + (1 - options.getThreshold()) * HINT_ACCEPT;
+                if (near != null && near.score >= accept) {
+                    return near;
+                }
+                if (options.getCancellation() != null && options.getCancellation().isCancelled()) {
+                    return null;
+                }
+                // A merely passable hit by the hint may be a look-alike of a
+                // target that moved; it only wins if nothing better is found
+                LOG.fine(near == null ? "Not at previous location; searching the whole area"
+                        : "Weak match at previous location; searching the whole area");
+                MatchResult best = find(new SourceImage(source.region(area[0], area[1], area[2], area[3])),
+                        area[0], area[1], template, 0, options);
+                return best == null || near != null && near.score > best.score ? near : best;
+            }
+        }
+        return find(new SourceImage(source.region(area[0], area[1], area[2], area[3])), area[0], area[1],
+                template, 0, options);
+    }
+
+    // Search of one rectangle of source, without the hint window; null when
+    // the template does not fit in it
+    static MatchResult findIn(PixelBuffer source, int x, int y, int width, int height,
+                              CompiledTemplate template, MatchOptions options) {
+        return find(new SourceImage(source.region(x, y, width, height)), x, y, template, 0, options);
+    }
+
+    // CompiledTemplate.of for the PixelBuffer entry points, which treat a
+    // template with nothing to compare (fully transparent) like any other
+    // unusable input: logged, and no match
+    private static CompiledTemplate compile(PixelBuffer template) {
+        try {
+            return CompiledTemplate.of(template);
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Unusable template: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Every public entry point accepts null options as the defaults
+    static MatchOptions orDefault(MatchOptions options) {
+        return options != null ? options : new MatchOptions();
+    }
+
+    // MatchOptions.region clipped to source, as {x, y, width, height}; null
+    // if it lies outside
+    static int[] searchArea(PixelBuffer source, MatchOptions options) {
+        if (!options.hasRegion()) {
+            return new int[] { 0, 0, source.getWidth(), source.getHeight() };
+        }
+        int x0 = Math.max(0, options.getRegionX());
+        int y0 = Math.max(0, options.getRegionY());
+        int x1 = Math.min(source.getWidth(), options.getRegionX() + options.getRegionWidth());
+        int y1 = Math.min(source.getHeight(), options.getRegionY() + options.getRegionHeight());
+        return x1 > x0 && y1 > y0 ? new int[] { x0, y0, x1 - x0, y1 - y0 } : null;
+    }
+
+    // source may be a view of part of the frame starting at (originX, originY)
+    private static MatchResult find(SourceImage source, int originX, int originY, CompiledTemplate template,
+                                    int templateIndex, MatchOptions options) {
+        if (options.getMode() == MatchMode.FEATURES) {
+            return findFeatures(source, originX, originY, template, templateIndex, options);
+        }
+        template = template.sampled(options.getSamples());
+        if (options.getMode() == MatchMode.NCC && template.level(0).isFlat()) {
+            LOG.warning("Template has no contrast; NCC is undefined");
+            return null;
+        }
+
+        ScaleSearch.Match match;
+        try {
+            match = ScaleSearch.search(source, template, options);
+        } catch (CancellationException e) {
+            LOG.fine("Search cancelled");
+            return null;
+        }
+        if (match == null) {
+            LOG.warning("Template is larger than source");
+            return null;
+        }
+        Candidates best = match.best;
+        if (best.size() == 0 || best.score(0) < options.getThreshold()) {
+            LOG.fine("No match found above threshold: " + options.getThreshold());
+            return null;
+        }
+
+        int x = originX + best.x(0);
+        int y = originY + best.y(0);
+        LOG.fine("Match found at (" + x + ", " + y + ") with score: " + best.score(0)
+                + " at scale " + match.scale);
+        MatchResult result = new MatchResult(x, y, match.template.getWidth(), match.template.getHeight(),
+                best.score(0));
+        result.templateIndex = templateIndex;
+        result.scale = match.scale;
+        return result;
+    }
+
+    private static MatchResult findFeatures(SourceImage source, int originX, int originY,
+                                            CompiledTemplate template, int templateIndex, MatchOptions options) {
+        MatchResult result;
+        try {
+            result = FeatureMatcher.match(source, template, options);
+        } catch (CancellationException e) {
+            LOG.fine("Search cancelled");
+            return null;
+        }
+        if (result == null || result.score < options.getThreshold()) {
+            LOG.fine("No match found above threshold: " + options.getThreshold());
+            return null;
+        }
+        result.x += originX;
+        result.y += originY;
+        result.templateIndex = templateIndex;
+        LOG.fine("Features matched at (" + result.x + ", " + result.y + ") with score: " + result.score);
+        return result;
+    }
+
+    public static class MatchResult {
+        public int x, y;           // Top-left corner
+        public int width, height;   // Template dimensions
+        public double score;        // Similarity score, range depends on MatchMode
+        public int templateIndex;   // Which template matched, for findAll/findAny
+        public double scale = 1.0;  // Template scale matched, see MatchOptions.scales
+
+        public MatchResult(int x, int y, int width, int height, double score) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.score = score;
+        }
+
+        // Get center point
+        public int getCenterX() {
+            return x + width / 2;
+        }
+
+        public int getCenterY() {
+            return y + height / 2;
+        }
+
+        // Copy in another coordinate space, e.g. factor 2 for a match in a
+        // frame captured at half the screen's resolution; scale follows so
+        // it stays template size relative to the new space
+        public MatchResult scaledBy(double factor) {
+            MatchResult scaled = new MatchResult((int) Math.round(x * factor), (int) Math.round(y * factor),
+                    (int) Math.round(width * factor), (int) Math.round(height * factor), score);
+            scaled.templateIndex = templateIndex;
+            scaled.scale = scale * factor;
+            return scaled;
+        }
+    }
+}
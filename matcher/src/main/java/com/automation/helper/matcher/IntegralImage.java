@@ -0,0 +1,52 @@
+package com.automation.helper.matcher;
+
+// Summed-area tables of a gray plane and of its squares, so the sum and the
+// sum of squares of any window cost four lookups. Tables are (w+1) x (h+1)
+// with a zero first row and column.
+final class IntegralImage {
+    final int width;
+    final int height;
+    private final int stride;
+    // Entries past ~8.4 Mpx (e.g. a 4K frame) exceed 2^31 and wrap, which
+    // is harmless: sum() subtracts in int, exact modulo 2^32, and any window
+    // smaller than that sums to < 2^31
+    private final int[] sum;
+    private final long[] sumSquares;
+
+    IntegralImage(GrayImage image) {
+        width = image.width;
+        height = image.height;
+        stride = width + 1;
+        sum = new int[stride * (height + 1)];
+        sumSquares = new long[stride * (height + 1)];
+
+        byte[] data = image.data;
+        for (int y = 0; y < height; y++) {
+            int rowSum = 0;
+            long rowSquares = 0;
+            int in = y * width;
+            int above = y * stride + 1;
+            int out = above + stride;
+            for (int x = 0; x < width; x++) {
+                int v = data[in + x] & 0xFF;
+                rowSum += v;
+                rowSquares += v * v;
+                sum[out + x] = sum[above + x] + rowSum;
+                sumSquares[out + x] = sumSquares[above + x] + rowSquares;
+            }
+        }
+    }
+
+    long sum(int x, int y, int w, int h) {
+        int top = y * stride + x;
+        int bottom = top + h * stride;
+        // No widening before the subtraction, or wrapped entries come out wrong
+        return sum[bottom + w] - sum[bottom] - sum[top + w] + sum[top];
+    }
+
+    long sumSquares(int x, int y, int w, int h) {
+        int top = y * stride + x;
+        int bottom = top + h * stride;
+        return sumSquares[bottom + w] - sumSquares[bottom] - sumSquares[top + w] + sumSquares[top];
+    }
+}
@@ -0,0 +1,289 @@
+package com.automation.helper.matcher;
+
+import java.util.Random;
+
+// Oriented FAST corners with steered BRIEF descriptors (the ORB recipe) for
+// MatchMode.FEATURES. Single scale: the descriptors tolerate roughly +/-20%
+// of size change, the homography absorbs the rest of small distortions.
+final class Keypoints {
+    // Brightness difference a FAST arc must exceed
+    private static final int FAST_THRESHOLD = 20;
+    // FAST-9: contiguous circle pixels that must all be brighter or darker
+    private static final int FAST_ARC = 9;
+    // Test pairs and orientation moments stay within this radius of the corner
+    static final int PATCH_RADIUS = 10;
+    // Patch radius plus the 5x5 smoothing box
+    private static final int MARGIN = PATCH_RADIUS + 3;
+    private static final int DESCRIPTOR_BITS = 256;
+    static final int DESCRIPTOR_LONGS = DESCRIPTOR_BITS / 64;
+    // Orientation is quantised to this many steps, one rotated pattern each
+    private static final int ANGLE_STEPS = 30;
+
+    // Bresenham circle of radius 3, clockwise from the top
+    private static final int[] CIRCLE_X = { 0, 1, 2, 3, 3, 3, 2, 1, 0, -1, -2, -3, -3, -3, -2, -1 };
+    private static final int[] CIRCLE_Y = { -3, -3, -2, -1, 0, 1, 2, 3, 3, 3, 2, 1, 0, -1, -2, -3 };
+    // Test pairs {x1, y1, x2, y2} per orientation step
+    private static final int[][] PATTERNS = patterns();
+    // Half-width of the orientation disc on each row, from -PATCH_RADIUS
+    private static final int[] DISC = disc();
+
+    final int count;
+    final int[] x;
+    final int[] y;
+    // DESCRIPTOR_LONGS bits-words per keypoint
+    final long[] descriptors;
+
+    private Keypoints(int count, int[] x, int[] y, long[] descriptors) {
+        this.count = count;
+        this.x = x;
+        this.y = y;
+        this.descriptors = descriptors;
+    }
+
+    // Up to maxKeypoints strongest corners of image, at least MARGIN pixels
+    // from its border
+    static Keypoints detect(GrayImage image, int maxKeypoints) {
+        int width = image.width;
+        int height = image.height;
+        if (width <= 2 * MARGIN || height <= 2 * MARGIN) {
+            return new Keypoints(0, new int[0], new int[0], new long[0]);
+        }
+        byte[] data = image.data;
+        int[] circle = new int[16];
+        for (int i = 0; i < 16; i++) {
+            circle[i] = CIRCLE_Y[i] * width + CIRCLE_X[i];
+        }
+        int north = -3 * width;
+        int south = 3 * width;
+
+        // Corner scores, 0 where there is none
+        int[] scores = new int[width * height];
+        for (int y = MARGIN; y < height - MARGIN; y++) {
+            for (int x = MARGIN; x < width - MARGIN; x++) {
+                int i = y * width + x;
+                // Any 9-arc covers two neighbouring compass points, which
+                // rules out most pixels before the full circle is walked
+                int center = data[i] & 0xFF;
+                int bright = center + FAST_THRESHOLD;
+                int dark = center - FAST_THRESHOLD;
+                int n = data[i + north] & 0xFF;
+                int e = data[i + 3] & 0xFF;
+                int s = data[i + south] & 0xFF;
+                int w = data[i - 3] & 0xFF;
+                boolean brightPair = (n > bright || s > bright) && (e > bright || w > bright);
+                boolean darkPair = (n < dark || s < dark) && (e < dark || w < dark);
+                if (!brightPair && !darkPair) {
+                    continue;
+                }
+                scores[i] = fastScore(data, i, circle);
+            }
+        }
+
+        // 3x3 non-maximum suppression, then the strongest survivors
+        PeakHeap strongest = new PeakHeap(maxKeypoints);
+        for (int y = MARGIN; y < height - MARGIN; y++) {
+            for (int x = MARGIN; x < width - MARGIN; x++) {
+                int i = y * width + x;
+                int score = scores[i];
+                if (score == 0 || score <= strongest.floor()) {
+                    continue;
+                }
+                if (score < scores[i - 1] || score <= scores[i + 1]
+                        || score < scores[i - width - 1] || score < scores[i - width] || score < scores[i - width + 1]
+                        || score <= scores[i + width - 1] || score <= scores[i + width]
+                        || score <= scores[i + width + 1]) {
+                    continue;
+                }
+                strongest.offer(x, y, score);
+            }
+        }
+
+        byte[] smooth = boxBlur(image);
+        // Test pairs as offsets into this image's rows
+        int[][] offsets = new int[ANGLE_STEPS][DESCRIPTOR_BITS * 2];
+        for (int step = 0; step < ANGLE_STEPS; step++) {
+            int[] pattern = PATTERNS[step];
+            for (int t = 0; t < DESCRIPTOR_BITS * 2; t++) {
+                offsets[step][t] = pattern[2 * t + 1] * width + pattern[2 * t];
+            }
+        }
+        int count = strongest.size();
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        long[] descriptors = new long[count * DESCRIPTOR_LONGS];
+        for (int k = 0; k < count; k++) {
+            xs[k] = strongest.x(k);
+            ys[k] = strongest.y(k);
+            int center = ys[k] * width + xs[k];
+            int step = angleStep(data, width, center);
+            describe(smooth, center, offsets[step], descriptors, k * DESCRIPTOR_LONGS);
+        }
+        return new Keypoints(count, xs, ys, descriptors);
+    }
+
+    // Hamming distance between keypoint i of a and keypoint j of b
+    static int distance(Keypoints a, int i, Keypoints b, int j) {
+        int distance = 0;
+        int ai = i * DESCRIPTOR_LONGS;
+        int bj = j * DESCRIPTOR_LONGS;
+        for (int w = 0; w < DESCRIPTOR_LONGS; w++) {
+            distance += Long.bitCount(a.descriptors[ai + w] ^ b.descriptors[bj + w]);
+        }
+        return distance;
+    }
+
+    // Sum of the differences beyond the threshold on the side that forms a
+    // FAST-9 arc, or 0 if neither does
+    private static int fastScore(byte[] data, int i, int[] circle) {
+        int center = data[i] & 0xFF;
+        int bright = center + FAST_THRESHOLD;
+        int dark = center - FAST_THRESHOLD;
+        int brightRun = 0, darkRun = 0, longestBright = 0, longestDark = 0;
+        int brightSum = 0, darkSum = 0;
+        // Twice round the circle so arcs crossing the start are counted
+        for (int c = 0; c < 32; c++) {
+            int v = data[i + circle[c & 15]] & 0xFF;
+            if (v > bright) {
+                brightRun++;
+                darkRun = 0;
+                if (c < 16) {
+                    brightSum += v - bright;
+                }
+            } else if (v < dark) {
+                darkRun++;
+                brightRun = 0;
+                if (c < 16) {
+                    darkSum += dark - v;
+                }
+            } else {
+                brightRun = 0;
+                darkRun = 0;
+            }
+            longestBright = Math.max(longestBright, brightRun);
+            longestDark = Math.max(longestDark, darkRun);
+        }
+        int score = 0;
+        if (longestBright >= FAST_ARC) {
+            score = brightSum;
+        }
+        if (longestDark >= FAST_ARC) {
+            score = Math.max(score, darkSum);
+        }
+        return score;
+    }
+
+    // Intensity-centroid orientation, quantised to ANGLE_STEPS
+    private static int angleStep(byte[] data, int width, int center) {
+        int m10 = 0;
+        int m01 = 0;
+        for (int dy = -PATCH_RADIUS; dy <= PATCH_RADIUS; dy++) {
+            int row = center + dy * width;
+            int half = DISC[dy + PATCH_RADIUS];
+            int rowSum = 0;
+            for (int dx = -half; dx <= half; dx++) {
+                int v = data[row + dx] & 0xFF;
+                m10 += dx * v;
+                rowSum += v;
+            }
+            m01 += dy * rowSum;
+        }
+        double angle = Math.atan2(m01, m10);
+        int step = (int) Math.round(angle / (2 * Math.PI) * ANGLE_STEPS);
+        return ((step % ANGLE_STEPS) + ANGLE_STEPS) % ANGLE_STEPS;
+    }
+
+    // One bit per test pair: whether the first point is darker than the second
+    private static void describe(byte[] smooth, int center, int[] offsets, long[] out, int offset) {
+        for (int w = 0; w < DESCRIPTOR_LONGS; w++) {
+            long word = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                int t = (w * 64 + bit) * 2;
+                int a = smooth[center + offsets[t]] & 0xFF;
+                int b = smooth[center + offsets[t + 1]] & 0xFF;
+                if (a < b) {
+                    word |= 1L << bit;
+                }
+            }
+            out[offset + w] = word;
+        }
+    }
+
+    // 5x5 box average, so single-pixel tests compare patch means like ORB's
+    // integral-image boxes without a full-frame integral image. Running sums
+    // in both passes; the outermost two pixels of each side are left at 0,
+    // which no test reaches past the detection margin.
+    private static byte[] boxBlur(GrayImage image) {
+        int width = image.width;
+        int height = image.height;
+        byte[] data = image.data;
+        int[] rows = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int total = 0;
+            for (int x = 0; x < 5; x++) {
+                total += data[row + x] & 0xFF;
+            }
+            rows[row + 2] = total;
+            for (int x = 3; x < width - 2; x++) {
+                total += (data[row + x + 2] & 0xFF) - (data[row + x - 3] & 0xFF);
+                rows[row + x] = total;
+            }
+        }
+        byte[] out = new byte[width * height];
+        int[] columns = new int[width];
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < width; x++) {
+                columns[x] += rows[y * width + x];
+            }
+        }
+        for (int y = 2; y < height - 2; y++) {
+            int row = y * width;
+            if (y > 2) {
+                int add = (y + 2) * width;
+                int drop = (y - 3) * width;
+                for (int x = 0; x < width; x++) {
+                    columns[x] += rows[add + x] - rows[drop + x];
+                }
+            }
+            for (int x = 2; x < width - 2; x++) {
+                out[row + x] = (byte) ((columns[x] + 12) / 25);
+            }
+        }
+        return out;
+    }
+
+    private static int[] disc() {
+        int[] half = new int[2 * PATCH_RADIUS + 1];
+        for (int dy = -PATCH_RADIUS; dy <= PATCH_RADIUS; dy++) {
+            half[dy + PATCH_RADIUS] = (int) Math.sqrt(PATCH_RADIUS * PATCH_RADIUS - dy * dy);
+        }
+        return half;
+    }
+
+    // Fixed random pairs inside the patch circle, Gaussian around the centre
+    // as in BRIEF, rotated once per orientation step
+    private static int[][] patterns() {
+        Random random = new Random(0x0B5L);
+        double[] base = new double[DESCRIPTOR_BITS * 4];
+        for (int i = 0; i < base.length; i += 2) {
+            double px, py;
+            do {
+                px = random.nextGaussian() * PATCH_RADIUS / 2;
+                py = random.nextGaussian() * PATCH_RADIUS / 2;
+            } while (px * px + py * py > PATCH_RADIUS * PATCH_RADIUS);
+            base[i] = px;
+            base[i + 1] = py;
+        }
+        int[][] patterns = new int[ANGLE_STEPS][base.length];
+        for (int step = 0; step < ANGLE_STEPS; step++) {
+            double angle = 2 * Math.PI * step / ANGLE_STEPS;
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            for (int i = 0; i < base.length; i += 2) {
+                patterns[step][i] = (int) Math.round(cos * base[i] - sin * base[i + 1]);
+                patterns[step][i + 1] = (int) Math.round(sin * base[i] + cos * base[i + 1]);
+            }
+        }
+        return patterns;
+    }
+}
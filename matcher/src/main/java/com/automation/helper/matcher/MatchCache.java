@@ -0,0 +1,193 @@
+package com.automation.helper.matcher;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Last outcome per template, for callers that search the same template on
+// frame after frame (e.g. polling for a button): when nothing in the search
+// area changed since, the cached result, or the cached "not found", is
+// returned without searching; when only some tiles changed, only they are
+// rescanned and compared with the cached result. A search whose options
+// differ from the cached one is done in full. Not thread-safe; one instance
+// per runner.
+public final class MatchCache {
+    private static final Logger LOG = Logger.getLogger("ImageMatcher");
+    // Templates remembered, least recently searched dropped first
+    private static final int MAX_ENTRIES = 64;
+    // Rescanning changed tiles is abandoned for one full search once they
+    // cover this fraction of the search area
+    private static final double MAX_DIRTY_FRACTION = 0.5;
+
+    private final Map<CompiledTemplate, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long reused;
+    private long rescanned;
+    private long searched;
+
+    public ImageMatcher.MatchResult findImage(PixelBuffer frame, CompiledTemplate template, MatchOptions options) {
+        if (frame == null || template == null) {
+            LOG.warning("Source or template is null");
+            return null;
+        }
+        return findImage(FrameGrid.of(frame), frame, template, options);
+    }
+
+    // For several templates searched in one frame: grid is built once, with
+    // FrameGrid.of(frame)
+    public ImageMatcher.MatchResult findImage(FrameGrid grid, PixelBuffer frame, CompiledTemplate template,
+                                              MatchOptions options) {
+        if (frame == null || template == null) {
+            LOG.warning("Source or template is null");
+            return null;
+        }
+        options = ImageMatcher.orDefault(options);
+        int[] area = ImageMatcher.searchArea(frame, options);
+        Entry entry = entries.get(template);
+        if (area == null || entry == null || !entry.sameSearch(options) || !grid.comparable(entry.grid)) {
+            return search(grid, frame, template, options);
+        }
+        if (!grid.changed(entry.grid, area[0], area[1], area[2], area[3])) {
+            reused++;
+            entry.grid = grid;
+            return copy(entry.result);
+        }
+        ImageMatcher.MatchResult previous = entry.result;
+        // A keypoint fit depends on the whole frame, and a changed target
+        // may now score anything
+        if (options.getMode() == MatchMode.FEATURES || (previous != null
+                && grid.changed(entry.grid, previous.x, previous.y, previous.width, previous.height))) {
+            return search(grid, frame, template, options);
+        }
+
+        // Every placement that overlaps a changed tile, clipped to the area
+        int reachX = (int) Math.ceil(template.getWidth() * options.getMaxScale()) - 1;
+        int reachY = (int) Math.ceil(template.getHeight() * options.getMaxScale()) - 1;
+        int minWidth = (int) Math.floor(template.getWidth() * options.getMinScale());
+        int minHeight = (int) Math.floor(template.getHeight() * options.getMinScale());
+        List<FrameGrid.Rect> dirty = grid.dirtyRects(entry.grid);
+        long dirtyArea = 0;
+        int[][] regions = new int[dirty.size()][];
+        for (int i = 0; i < dirty.size(); i++) {
+            FrameGrid.Rect rect = dirty.get(i);
+            int x0 = Math.max(area[0], rect.x - reachX);
+            int y0 = Math.max(area[1], rect.y - reachY);
+            int x1 = Math.min(area[0] + area[2], rect.x + rect.width + reachX);
+            int y1 = Math.min(area[1] + area[3], rect.y + rect.height + reachY);
+            if (x1 - x0 >= minWidth && y1 - y0 >= minHeight) {
+                regions[i] = new int[] { x0, y0, x1 - x0, y1 - y0 };
+                dirtyArea += (long) (x1 - x0) * (y1 - y0);
+            }
+        }
+        if (dirtyArea > MAX_DIRTY_FRACTION * area[2] * area[3]) {
+            return search(grid, frame, template, options);
+        }
+
+        rescanned++;
+        ImageMatcher.MatchResult best = previous;
+        for (int[] region : regions) {
+            if (region == null) {
+                continue;
+            }
+            ImageMatcher.MatchResult found = ImageMatcher.findIn(frame, region[0], region[1], region[2], region[3],
+                    template, options);
+            if (cancelled(options)) {
+                return null;
+            }
+            if (found != null && (best == null || found.score > best.score)) {
+                best = found;
+            }
+        }
+        entry.grid = grid;
+        entry.result = best;
+        return copy(best);
+    }
+
+    // Forget every template's outcome, e.g. when the target app restarts
+    public void clear() {
+        entries.clear();
+    }
+
+    // Searches answered from the cache without scanning
+    public long getReused() { return reused; }
+    // Searches answered by rescanning changed tiles only
+    public long getRescanned() { return rescanned; }
+    // Full searches
+    public long getSearched() { return searched; }
+
+    private ImageMatcher.MatchResult search(FrameGrid grid, PixelBuffer frame, CompiledTemplate template,
+                                            MatchOptions options) {
+        searched++;
+        ImageMatcher.MatchResult result = ImageMatcher.findImage(frame, template, options);
+        if (cancelled(options)) {
+            return null;
+        }
+        entries.put(template, new Entry(grid, result, options));
+        if (entries.size() > MAX_ENTRIES) {
+            Iterator<Entry> eldest = entries.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        return copy(result);
+    }
+
+    private static boolean cancelled(MatchOptions options) {
+        return options.getCancellation() != null && options.getCancellation().isCancelled();
+    }
+
+    // Callers may adjust what they get back; the cached result stays intact
+    private static ImageMatcher.MatchResult copy(ImageMatcher.MatchResult result) {
+        if (result == null) {
+            return null;
+        }
+        ImageMatcher.MatchResult copy = new ImageMatcher.MatchResult(result.x, result.y, result.width,
+                result.height, result.score);
+        copy.templateIndex = result.templateIndex;
+        copy.scale = result.scale;
+        return copy;
+    }
+
+    private static final class Entry {
+        FrameGrid grid;
+        ImageMatcher.MatchResult result;
+        // Options that decide the outcome; the hint only decides where to look first
+        final MatchMode mode;
+        final double threshold;
+        final double minScale, maxScale;
+        final int samples;
+        final int colourPrefilter;
+        final boolean hasRegion;
+        final int regionX, regionY, regionWidth, regionHeight;
+        final int maxPyramidLevel;
+        final int candidates;
+
+        Entry(FrameGrid grid, ImageMatcher.MatchResult result, MatchOptions options) {
+            this.grid = grid;
+            this.result = result;
+            this.mode = options.getMode();
+            this.threshold = options.getThreshold();
+            this.minScale = options.getMinScale();
+            this.maxScale = options.getMaxScale();
+            this.samples = options.getSamples();
+            this.colourPrefilter = options.getColourPrefilter();
+            this.hasRegion = options.hasRegion();
+            this.regionX = options.getRegionX();
+            this.regionY = options.getRegionY();
+            this.regionWidth = options.getRegionWidth();
+            this.regionHeight = options.getRegionHeight();
+            this.maxPyramidLevel = options.getMaxPyramidLevel();
+            this.candidates = options.getCandidates();
+        }
+
+        boolean sameSearch(MatchOptions options) {
+            return mode == options.getMode() && threshold == options.getThreshold()
+                    && minScale == options.getMinScale() && maxScale == options.getMaxScale()
+                    && samples == options.getSamples() && colourPrefilter == options.getColourPrefilter()
+                    && hasRegion == options.hasRegion() && regionX == options.getRegionX()
+                    && regionY == options.getRegionY() && regionWidth == options.getRegionWidth()
+                    && regionHeight == options.getRegionHeight()
+                    && maxPyramidLevel == options.getMaxPyramidLevel() && candidates == options.getCandidates();
+        }
+    }
+}
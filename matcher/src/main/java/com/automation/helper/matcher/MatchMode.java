@@ -0,0 +1,31 @@
+package com.automation.helper.matcher;
+
+// Scoring used by ImageMatcher. All modes report "higher is better", but the
+// threshold means something different in each.
+public enum MatchMode {
+    // Colour sum of absolute differences, reported as 1 - meanAbsDiff / 255 over
+    // the R, G and B channels. Range [0, 1]; 0.8 allows an average difference of
+    // ~51 levels per channel. Sensitive to brightness changes.
+    SAD,
+
+    // Zero-mean normalized cross-correlation of luma (0.299R + 0.587G + 0.114B),
+    // i.e. the Pearson correlation between template and window. Range [-1, 1];
+    // unaffected by uniform brightness/contrast changes. Same definition as the
+    // AutoPilot template step, so its thresholds (typically 0.8-0.95) carry over.
+    // Flat windows score 0 and a flat template never matches.
+    NCC,
+
+    // Keypoint matching (ORB-style corners and binary descriptors) with a
+    // RANSAC homography: finds targets that are rotated, slightly skewed or
+    // partly covered, which the window modes above cannot. The score is the
+    // fraction of the template's keypoints that agree on one placement, in
+    // [0, 1]: near 1 for an unchanged target, 0.2-0.6 when rotated by ten
+    // degrees or half covered, ~0.1 at 45 degrees, so thresholds of 0.1-0.2
+    // are usual; options without one use 0.15 in this mode. The template needs corners, i.e. some texture or text, and
+    // ~40 px or more per side. Scales, samples and the colour prefilter do
+    // not apply; the frame's keypoints are found once and shared by every
+    // template searched in it. MatchResult.width/height are the bounding box
+    // of the placed template and MatchResult.scale its size relative to the
+    // template.
+    FEATURES
+}
@@ -0,0 +1,191 @@
+package com.automation.helper.matcher;
+
+// Per-call settings for ImageMatcher.findImage
+public class MatchOptions {
+    // How the exhaustive NCC scan computes its cross term
+    public enum Backend {
+        // Frequency domain when the cost model says it is cheaper
+        AUTO,
+        SPATIAL,
+        // Spatial anyway where the padded source exceeds
+        // FftNccScorer.MAX_FFT_AREA, e.g. a full-resolution tablet frame
+        FFT
+    }
+
+    // NaN until set: the default depends on the mode
+    private double threshold = Double.NaN;
+    private MatchMode mode = MatchMode.SAD;
+    private int maxPyramidLevel = 3;
+    private int candidates = 5;
+    private Backend backend = Backend.AUTO;
+    private CancellationToken cancellation;
+    private boolean earlyAbandon = true;
+    private double minScale = 1.0;
+    private double maxScale = 1.0;
+    // Search rectangle; width 0 means the whole source
+    private int regionX, regionY, regionWidth, regionHeight;
+    private int samples;
+    private int colourPrefilter;
+    private PrefilterStats prefilterStats;
+    private boolean hasHint;
+    private int hintX, hintY;
+    private int maxResults = 20;
+    private double maxOverlap = 0.3;
+
+    // Minimum score to report a match; see MatchMode for its meaning per mode.
+    // Defaults to ImageMatcher.DEFAULT_THRESHOLD, or DEFAULT_FEATURES_THRESHOLD
+    // in MatchMode.FEATURES, whose scores run far lower.
+    public MatchOptions threshold(double threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
+    public MatchOptions mode(MatchMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    // Coarsest pyramid level to start from (level n is 1/2^n scale). The
+    // search may start lower so the template keeps at least 8 px per side.
+    // 0 scans every full-resolution position, which is exact but slow.
+    public MatchOptions maxPyramidLevel(int maxPyramidLevel) {
+        this.maxPyramidLevel = Math.max(0, maxPyramidLevel);
+        return this;
+    }
+
+    // How many coarse-level candidates are refined down to full resolution
+    public MatchOptions candidates(int candidates) {
+        this.candidates = Math.max(1, candidates);
+        return this;
+    }
+
+    // NCC only; SAD is not a correlation and always runs spatially
+    public MatchOptions backend(Backend backend) {
+        this.backend = backend;
+        return this;
+    }
+
+    // Cancelling the token makes an in-flight findImage return null promptly
+    public MatchOptions cancellation(CancellationToken cancellation) {
+        this.cancellation = cancellation;
+        return this;
+    }
+
+    // SAD only: stop summing a window once it provably scores below both the
+    // threshold and the candidates kept so far. Results are unchanged; this
+    // only exists to measure the plain scan.
+    public MatchOptions earlyAbandon(boolean earlyAbandon) {
+        this.earlyAbandon = earlyAbandon;
+        return this;
+    }
+
+    // Template sizes to try relative to its captured size, e.g. 0.75-1.5 for
+    // a template captured on a tablet with a different density. The range is
+    // swept in ~10% steps and the match reports the scale it was found at.
+    public MatchOptions scales(double minScale, double maxScale) {
+        if (minScale <= 0 || maxScale < minScale) {
+            throw new IllegalArgumentException("Invalid scale range: " + minScale + "-" + maxScale);
+        }
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+        return this;
+    }
+
+    // A single scale, typically MatchResult.scale from an earlier match in
+    // the same run, so the sweep is skipped
+    public MatchOptions scale(double scale) {
+        return scales(scale, scale);
+    }
+
+    // Sparse matching: compare only this many template pixels, those with the
+    // strongest gradient inside the mask, on every pyramid level. A few
+    // hundred are usually enough, so cost stops growing with template size.
+    // 0 (the default) compares every masked-in pixel.
+    public MatchOptions samples(int samples) {
+        this.samples = Math.max(0, samples);
+        return this;
+    }
+
+    // Skip windows of the exhaustive scan whose mean R - G or B - G differs
+    // from the template's by more than this many levels, without scoring
+    // them. Cheap for any template size, but unlike the scores it is not
+    // exact: a screen tinted by a night-light filter can lose its match.
+    // 0 (the default) turns it off. Ignored for masked and sparse templates,
+    // whose box mean includes pixels they do not compare.
+    public MatchOptions colourPrefilter(int maxChromaDifference) {
+        this.colourPrefilter = Math.max(0, maxChromaDifference);
+        return this;
+    }
+
+    // Where the prefilter reports how many windows it rejected
+    public MatchOptions prefilterStats(PrefilterStats stats) {
+        this.prefilterStats = stats;
+        return this;
+    }
+
+    // Only windows lying entirely inside this rectangle of the source are
+    // searched; results are still in source coordinates
+    public MatchOptions region(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid region size: " + width + "x" + height);
+        }
+        this.regionX = x;
+        this.regionY = y;
+        this.regionWidth = width;
+        this.regionHeight = height;
+        return this;
+    }
+
+    // findImage only: where the template was last found (MatchResult.x, y).
+    // A small window around it is searched first and the whole region only
+    // if the template is no longer there, or scores there only a little
+    // above the threshold: the better of the two hits is returned then.
+    public MatchOptions near(int x, int y) {
+        this.hasHint = true;
+        this.hintX = x;
+        this.hintY = y;
+        return this;
+    }
+
+    // findAllImages only: cap on the number of locations returned
+    public MatchOptions maxResults(int maxResults) {
+        this.maxResults = Math.max(1, maxResults);
+        return this;
+    }
+
+    // findAllImages only: two results whose intersection over union exceeds
+    // this are the same object and only the better one is kept. 0 allows
+    // no overlap at all; 1 keeps everything but exact duplicates.
+    public MatchOptions maxOverlap(double maxOverlap) {
+        this.maxOverlap = maxOverlap;
+        return this;
+    }
+
+    public double getThreshold() {
+        if (!Double.isNaN(threshold)) {
+            return threshold;
+        }
+        return mode == MatchMode.FEATURES ? ImageMatcher.DEFAULT_FEATURES_THRESHOLD : ImageMatcher.DEFAULT_THRESHOLD;
+    }
+    public MatchMode getMode() { return mode; }
+    public int getMaxPyramidLevel() { return maxPyramidLevel; }
+    public int getCandidates() { return candidates; }
+    public Backend getBackend() { return backend; }
+    public CancellationToken getCancellation() { return cancellation; }
+    public boolean isEarlyAbandon() { return earlyAbandon; }
+    public double getMinScale() { return minScale; }
+    public double getMaxScale() { return maxScale; }
+    public int getSamples() { return samples; }
+    public int getColourPrefilter() { return colourPrefilter; }
+    public PrefilterStats getPrefilterStats() { return prefilterStats; }
+    public boolean hasRegion() { return regionWidth > 0; }
+    public int getRegionX() { return regionX; }
+    public int getRegionY() { return regionY; }
+    public int getRegionWidth() { return regionWidth; }
+    public int getRegionHeight() { return regionHeight; }
+    public boolean hasHint() { return hasHint; }
+    public int getHintX() { return hintX; }
+    public int getHintY() { return hintY; }
+    public int getMaxResults() { return maxResults; }
+    public double getMaxOverlap() { return maxOverlap; }
+}
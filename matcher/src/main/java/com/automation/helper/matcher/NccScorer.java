@@ -0,0 +1,134 @@
+package com.automation.helper.matcher;
+
+// MatchMode.NCC: Pearson correlation of luma. With an integral image the
+// window sum and sum of squares cost O(1) and only the cross term sum(s * t)
+// is proportional to the template area. Without one (for scoring a handful
+// of refine positions) they are accumulated alongside the cross term.
+// Masked or sparse templates correlate over their compared pixels only.
+final class NccScorer implements WindowScorer {
+    private final GrayImage source;
+    private final IntegralImage integral;
+    private final GrayImage template;
+    private final long count;
+    private final long templateSum;
+    // count * sum(t^2) - sum(t)^2, i.e. count^2 times the template variance
+    private final double templateVariance;
+    // Compared pixels of a masked or sparse template as source offsets from
+    // the window origin and template values; null for a full template
+    private final int[] sampleOffsets;
+    private final int[] sampleValues;
+
+    NccScorer(GrayImage source, CompiledTemplate.Level template) {
+        this(source, null, template);
+    }
+
+    NccScorer(GrayImage source, IntegralImage integral, CompiledTemplate.Level level) {
+        this.source = source;
+        this.integral = integral;
+        this.template = level.gray;
+        this.count = level.count();
+        this.templateSum = level.sum;
+        this.templateVariance = level.variance;
+        if (level.samples == null) {
+            sampleOffsets = null;
+            sampleValues = null;
+            return;
+        }
+        sampleOffsets = new int[level.samples.length];
+        sampleValues = new int[level.samples.length];
+        for (int k = 0; k < level.samples.length; k++) {
+            int i = level.samples[k];
+            sampleOffsets[k] = (i / template.width) * source.width + i % template.width;
+            sampleValues[k] = template.data[i] & 0xFF;
+        }
+    }
+
+    @Override
+    public double score(int startX, int startY) {
+        if (templateVariance <= 0) {
+            return 0;
+        }
+        if (sampleOffsets != null) {
+            return scoreSampled(startX, startY);
+        }
+        if (integral == null) {
+            return scoreDirect(startX, startY);
+        }
+
+        int templateWidth = template.width;
+        int templateHeight = template.height;
+        long windowSum = integral.sum(startX, startY, templateWidth, templateHeight);
+        long windowVariance = count * integral.sumSquares(startX, startY, templateWidth, templateHeight)
+                - windowSum * windowSum;
+        if (windowVariance <= 0) {
+            return 0;
+        }
+
+        byte[] sourceData = source.data;
+        byte[] templateData = template.data;
+        long cross = 0;
+        int sourceRow = startY * source.width + startX;
+        int templateRow = 0;
+        for (int y = 0; y < templateHeight; y++) {
+            int rowCross = 0;
+            for (int x = 0; x < templateWidth; x++) {
+                rowCross += (sourceData[sourceRow + x] & 0xFF) * (templateData[templateRow + x] & 0xFF);
+            }
+            cross += rowCross;
+            sourceRow += source.width;
+            templateRow += templateWidth;
+        }
+        return correlation(cross, windowSum, windowVariance);
+    }
+
+    private double scoreDirect(int startX, int startY) {
+        byte[] sourceData = source.data;
+        byte[] templateData = template.data;
+        long windowSum = 0;
+        long windowSquares = 0;
+        long cross = 0;
+        int sourceRow = startY * source.width + startX;
+        int templateRow = 0;
+        for (int y = 0; y < template.height; y++) {
+            for (int x = 0; x < template.width; x++) {
+                int s = sourceData[sourceRow + x] & 0xFF;
+                windowSum += s;
+                windowSquares += s * s;
+                cross += s * (templateData[templateRow + x] & 0xFF);
+            }
+            sourceRow += source.width;
+            templateRow += template.width;
+        }
+        long windowVariance = count * windowSquares - windowSum * windowSum;
+        if (windowVariance <= 0) {
+            return 0;
+        }
+        return correlation(cross, windowSum, windowVariance);
+    }
+
+    private double scoreSampled(int startX, int startY) {
+        byte[] sourceData = source.data;
+        int[] offsets = sampleOffsets;
+        int[] values = sampleValues;
+        int base = startY * source.width + startX;
+        long windowSum = 0;
+        long windowSquares = 0;
+        long cross = 0;
+        for (int k = 0; k < offsets.length; k++) {
+            int s = sourceData[base + offsets[k]] & 0xFF;
+            windowSum += s;
+            windowSquares += s * s;
+            cross += s * values[k];
+        }
+        long windowVariance = count * windowSquares - windowSum * windowSum;
+        if (windowVariance <= 0) {
+            return 0;
+        }
+        return correlation(cross, windowSum, windowVariance);
+    }
+
+    private double correlation(long cross, long windowSum, long windowVariance) {
+        double numerator = (double) (count * cross - windowSum * templateSum);
+        return numerator / Math.sqrt(windowVariance * templateVariance);
+    }
+}
@@ -0,0 +1,106 @@
+package com.automation.helper.matcher;
+
+// The `capacity` highest-scoring positions offered, kept as a binary min-heap
+// in parallel arrays so the weakest is evicted in O(log n). Unlike
+// Candidates it does no spatial suppression; callers offer local maxima.
+// Equal scores rank by raster order, earlier first, so what is kept does
+// not depend on the order positions are offered in: not on band splits,
+// and not on which windows early abandon skipped before the heap filled.
+final class PeakHeap {
+    private final int[] xs;
+    private final int[] ys;
+    private final double[] scores;
+    private int size;
+
+    PeakHeap(int capacity) {
+        xs = new int[capacity];
+        ys = new int[capacity];
+        scores = new double[capacity];
+    }
+
+    // Lowest score that would still be accepted, or -Infinity while not full
+    double floor() {
+        return size < scores.length ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    void offer(int x, int y, double score) {
+        if (score == Double.NEGATIVE_INFINITY
+                || size == scores.length && !ranksAbove(score, x, y, scores[0], xs[0], ys[0])) {
+            return;
+        }
+        if (size < scores.length) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (ranksAbove(score, x, y, scores[parent], xs[parent], ys[parent])) {
+                    break;
+                }
+                set(i, xs[parent], ys[parent], scores[parent]);
+                i = parent;
+            }
+            set(i, x, y, score);
+            return;
+        }
+        siftDown(x, y, score);
+    }
+
+    void offerAll(PeakHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.xs[i], other.ys[i], other.scores[i]);
+        }
+    }
+
+    // Replace the root with (x, y, score) and restore the heap order
+    private void siftDown(int x, int y, double score) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && ranksAbove(scores[child], xs[child], ys[child],
+                    scores[child + 1], xs[child + 1], ys[child + 1])) {
+                child++;
+            }
+            if (ranksAbove(scores[child], xs[child], ys[child], score, x, y)) {
+                break;
+            }
+            set(i, xs[child], ys[child], scores[child]);
+            i = child;
+        }
+        set(i, x, y, score);
+    }
+
+    private static boolean ranksAbove(double score, int x, int y, double otherScore, int otherX, int otherY) {
+        if (score != otherScore) {
+            return score > otherScore;
+        }
+        return y != otherY ? y < otherY : x < otherX;
+    }
+
+    private void set(int i, int x, int y, double score) {
+        xs[i] = x;
+        ys[i] = y;
+        scores[i] = score;
+    }
+
+    // Heap sort in place: each pass moves the current minimum behind the heap,
+    // leaving the arrays highest score first. No offers after this.
+    void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            int x = xs[end];
+            int y = ys[end];
+            double score = scores[end];
+            set(end, xs[0], ys[0], scores[0]);
+            int saved = size;
+            size = end;
+            siftDown(x, y, score);
+            size = saved;
+        }
+    }
+
+    int size() { return size; }
+    int x(int i) { return xs[i]; }
+    int y(int i) { return ys[i]; }
+    double score(int i) { return scores[i]; }
+}
@@ -0,0 +1,202 @@
+package com.automation.helper.matcher;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+
+// All-occurrences counterpart of PyramidSearch, for ImageMatcher.findAllImages.
+// The coarsest level is streamed through three rolling score rows, and only
+// local maxima of the score surface go into a bounded heap, so no score map
+// is ever materialized. Each peak is then refined on its own, +/-2 px per
+// level, down to full resolution.
+final class PeakSearch {
+    // Coarse scores of a small template depend on how each occurrence lines
+    // up with the 2x2 grid, so equal objects can rank far apart; a larger
+    // coarsest template keeps every occurrence among the top peaks
+    private static final int MIN_TEMPLATE_SIDE = 2 * PyramidSearch.MIN_TEMPLATE_SIDE;
+
+    private PeakSearch() {}
+
+    // Up to `capacity` refined full-resolution peaks, highest score first.
+    // Throws CancellationException if the options' token is cancelled.
+    static PeakHeap search(SourceImage source, CompiledTemplate template, MatchOptions options, int capacity) {
+        int top = PyramidSearch.searchTop(template, options, MIN_TEMPLATE_SIDE);
+
+        CancellationToken token = options.getCancellation();
+        GrayImage sourceTop = source.level(top);
+        GrayImage templateTop = template.gray(top);
+        WindowScorer scorer = PyramidSearch.scorer(options, top, source, template, true);
+        PyramidSearch.checkCancelled(token);
+        PeakHeap peaks = scanAll(scorer, sourceTop.width - templateTop.width,
+                sourceTop.height - templateTop.height, options, capacity);
+        peaks.sortDescending();
+        if (top == 0) {
+            return peaks;
+        }
+
+        WindowScorer[] scorers = new WindowScorer[top];
+        for (int level = 0; level < top; level++) {
+            scorers[level] = PyramidSearch.scorer(options, level, source, template, false);
+        }
+        PeakHeap refined = new PeakHeap(capacity);
+        for (int i = 0; i < peaks.size(); i++) {
+            PyramidSearch.checkCancelled(token);
+            int x = peaks.x(i);
+            int y = peaks.y(i);
+            double best = Double.NEGATIVE_INFINITY;
+            for (int level = top - 1; level >= 0; level--) {
+                int maxX = source.level(level).width - template.gray(level).width;
+                int maxY = source.level(level).height - template.gray(level).height;
+                int centerX = x * 2;
+                int centerY = y * 2;
+                best = Double.NEGATIVE_INFINITY;
+                for (int wy = Math.max(0, centerY - PyramidSearch.REFINE_RADIUS);
+                     wy <= Math.min(maxY, centerY + PyramidSearch.REFINE_RADIUS); wy++) {
+                    for (int wx = Math.max(0, centerX - PyramidSearch.REFINE_RADIUS);
+                         wx <= Math.min(maxX, centerX + PyramidSearch.REFINE_RADIUS); wx++) {
+                        double score = score(scorers[level], wx, wy, best, options);
+                        if (score > best) {
+                            best = score;
+                            x = wx;
+                            y = wy;
+                        }
+                    }
+                }
+            }
+            // Two coarse peaks may settle on the same spot; findAllImages'
+            // overlap suppression drops the duplicate
+            refined.offer(x, y, best);
+        }
+        refined.sortDescending();
+        return refined;
+    }
+
+    private static PeakHeap scanAll(WindowScorer scorer, int maxX, int maxY, MatchOptions options, int capacity) {
+        ForkJoinPool pool = SearchPool.get();
+        int rows = maxY + 1;
+        if (pool == null || rows < 2 * PyramidSearch.MIN_BAND_ROWS) {
+            return scanBand(scorer, 0, rows, maxX, maxY, options, capacity);
+        }
+        int bandRows = Math.max(PyramidSearch.MIN_BAND_ROWS, rows / (SearchPool.parallelism() * 4));
+        try {
+            return pool.invoke(new BandTask(scorer, 0, rows, bandRows, maxX, maxY, options, capacity));
+        } catch (RejectedExecutionException e) {
+            // The pool was resized between get() and invoke()
+            return scanBand(scorer, 0, rows, maxX, maxY, options, capacity);
+        }
+    }
+
+    // Peaks of rows [fromY, toY). The rows just outside the band are scored
+    // too, so a peak on a band edge is judged against all its neighbours.
+    private static PeakHeap scanBand(WindowScorer scorer, int fromY, int toY, int maxX, int maxY,
+                                     MatchOptions options, int capacity) {
+        PeakHeap band = new PeakHeap(capacity);
+        CancellationToken token = options.getCancellation();
+        double[] above = new double[maxX + 1];
+        double[] row = new double[maxX + 1];
+        double[] below = new double[maxX + 1];
+        boolean hasAbove = fromY > 0;
+        if (hasAbove) {
+            scoreRow(scorer, fromY - 1, above, band, options, token);
+        }
+        scoreRow(scorer, fromY, row, band, options, token);
+        for (int y = fromY; y < toY; y++) {
+            boolean hasBelow = y < maxY;
+            if (hasBelow) {
+                scoreRow(scorer, y + 1, below, band, options, token);
+            }
+            for (int x = 0; x <= maxX; x++) {
+                // Early-abandoned windows are -Infinity and never peak
+                if (row[x] > band.floor()
+                        && isPeak(hasAbove ? above : null, row, hasBelow ? below : null, x, maxX)) {
+                    band.offer(x, y, row[x]);
+                }
+            }
+            double[] recycled = above;
+            above = row;
+            row = below;
+            below = recycled;
+            hasAbove = true;
+        }
+        return band;
+    }
+
+    private static void scoreRow(WindowScorer scorer, int y, double[] out, PeakHeap kept, MatchOptions options,
+                                 CancellationToken token) {
+        for (int x = 0; x < out.length; x++) {
+            PyramidSearch.checkCancelled(token);
+            out[x] = score(scorer, x, y, kept.floor(), options);
+        }
+    }
+
+    // A window below the heap floor can only be offered once that floor has
+    // risen further, and a neighbour abandoned against an earlier floor is
+    // below the current one, so early abandon cannot fake or hide a peak
+    private static double score(WindowScorer scorer, int x, int y, double floor, MatchOptions options) {
+        return options.isEarlyAbandon() ? scorer.score(x, y, floor) : scorer.score(x, y);
+    }
+
+    // Local maximum over the 8-neighbourhood. Ties go to the neighbour later
+    // in raster order, so a plateau yields one peak rather than all its pixels.
+    private static boolean isPeak(double[] above, double[] row, double[] below, int x, int maxX) {
+        double score = row[x];
+        int left = Math.max(0, x - 1);
+        int right = Math.min(maxX, x + 1);
+        if (above != null) {
+            for (int i = left; i <= right; i++) {
+                if (above[i] > score) {
+                    return false;
+                }
+            }
+        }
+        if ((x > 0 && row[x - 1] > score) || (x < maxX && row[x + 1] >= score)) {
+            return false;
+        }
+        if (below != null) {
+            for (int i = left; i <= right; i++) {
+                if (below[i] >= score) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static final class BandTask extends RecursiveTask<PeakHeap> {
+        private static final long serialVersionUID = 1L;
+        private final WindowScorer scorer;
+        private final int fromY;
+        private final int toY;
+        private final int bandRows;
+        private final int maxX;
+        private final int maxY;
+        private final MatchOptions options;
+        private final int capacity;
+
+        BandTask(WindowScorer scorer, int fromY, int toY, int bandRows, int maxX, int maxY,
+                 MatchOptions options, int capacity) {
+            this.scorer = scorer;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.bandRows = bandRows;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.options = options;
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected PeakHeap compute() {
+            if (toY - fromY <= bandRows) {
+                return scanBand(scorer, fromY, toY, maxX, maxY, options, capacity);
+            }
+            int middle = (fromY + toY) >>> 1;
+            BandTask top = new BandTask(scorer, fromY, middle, bandRows, maxX, maxY, options, capacity);
+            top.fork();
+            PeakHeap bottom = new BandTask(scorer, middle, toY, bandRows, maxX, maxY, options, capacity).compute();
+            PeakHeap merged = top.join();
+            merged.offerAll(bottom);
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.automation.helper.matcher;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+// Platform-independent raster of packed ARGB pixels (same layout as
+// android.graphics.Bitmap#getPixels). Row y starts at offset + y * stride.
+public final class PixelBuffer {
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int offset;
+    private final int[] pixels;
+
+    public PixelBuffer(int width, int height, int[] pixels) {
+        this(width, height, pixels, 0, width);
+    }
+
+    public PixelBuffer(int width, int height, int[] pixels, int offset, int stride) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+        if (stride < width || offset < 0
+                || (long) offset + (long) (height - 1) * stride + width > pixels.length) {
+            throw new IllegalArgumentException("Pixel array too small for "
+                    + width + "x" + height + " (stride " + stride + ", offset " + offset + ")");
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+        this.offset = offset;
+        this.pixels = pixels;
+    }
+
+    // Convert an RGBA_8888 image plane (as delivered by ImageReader) into ARGB
+    public static PixelBuffer fromRgba(ByteBuffer buffer, int width, int height,
+                                       int pixelStride, int rowStride) {
+        int[] out = new int[width * height];
+        ByteBuffer src = buffer.duplicate();
+
+        if (pixelStride == 4 && rowStride % 4 == 0) {
+            // Read whole rows as little-endian ints (0xAABBGGRR) and swap R/B
+            IntBuffer ints = src.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            int rowInts = rowStride / 4;
+            for (int y = 0; y < height; y++) {
+                int row = y * width;
+                ints.position(y * rowInts);
+                ints.get(out, row, width);
+                for (int x = row; x < row + width; x++) {
+                    int p = out[x];
+                    out[x] = (p & 0xFF00FF00) | ((p & 0xFF) << 16) | ((p >> 16) & 0xFF);
+                }
+            }
+        } else {
+            int base = src.position();
+            for (int y = 0; y < height; y++) {
+                int idx = base + y * rowStride;
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    int r = src.get(idx) & 0xFF;
+                    int g = src.get(idx + 1) & 0xFF;
+                    int b = src.get(idx + 2) & 0xFF;
+                    int a = pixelStride >= 4 ? src.get(idx + 3) & 0xFF : 0xFF;
+                    out[row + x] = (a << 24) | (r << 16) | (g << 8) | b;
+                    idx += pixelStride;
+                }
+            }
+        }
+        return new PixelBuffer(width, height, out);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getStride() { return stride; }
+    public int getOffset() { return offset; }
+
+    // Backing array; callers index it with getOffset() and getStride()
+    public int[] getPixels() { return pixels; }
+
+    public int getPixel(int x, int y) {
+        return pixels[offset + y * stride + x];
+    }
+
+    // View of a sub-rectangle sharing the same backing array
+    public PixelBuffer region(int x, int y, int regionWidth, int regionHeight) {
+        if (x < 0 || y < 0 || x + regionWidth > width || y + regionHeight > height) {
+            throw new IllegalArgumentException("Region outside buffer");
+        }
+        return new PixelBuffer(regionWidth, regionHeight, pixels, offset + y * stride + x, stride);
+    }
+}
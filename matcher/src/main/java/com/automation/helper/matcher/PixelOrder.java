@@ -0,0 +1,26 @@
+package com.automation.helper.matcher;
+
+// Visiting order for early-abandon scoring: template pixels furthest from the
+// template's mean come first. Those are the pixels a wrong window is least
+// likely to reproduce, so its partial difference outgrows the budget after a
+// small fraction of the template.
+final class PixelOrder {
+    private PixelOrder() {}
+
+    // Indices 0..deviations.length-1 sorted by descending deviation. Counting
+    // sort, since deviations are small non-negative integers.
+    static int[] mostDistinctFirst(int[] deviations, int maxDeviation) {
+        int[] starts = new int[maxDeviation + 2];
+        for (int d : deviations) {
+            starts[maxDeviation - d + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] order = new int[deviations.length];
+        for (int i = 0; i < deviations.length; i++) {
+            order[starts[maxDeviation - deviations[i]]++] = i;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,54 @@
+package com.automation.helper.matcher;
+
+// MatchOptions.colourPrefilter: skips windows whose mean chroma (R - G and
+// B - G) is far from the template's before the wrapped scorer sees them.
+// Two integral-image lookups per channel, whatever the template size.
+// Chroma is unaffected by a uniform brightness change, which NCC and the
+// luma levels tolerate too.
+final class PrefilterScorer implements WindowScorer {
+    private final WindowScorer scorer;
+    private final IntegralImage redGreen;
+    private final IntegralImage blueGreen;
+    private final int width;
+    private final int height;
+    // Template chroma sums and the allowed difference, scaled to the window
+    private final double redGreenSum;
+    private final double blueGreenSum;
+    private final double maxDifference;
+    private final PrefilterStats stats;
+
+    PrefilterScorer(WindowScorer scorer, IntegralImage[] chroma, CompiledTemplate template, int level,
+                    int tolerance, PrefilterStats stats) {
+        this.scorer = scorer;
+        this.redGreen = chroma[0];
+        this.blueGreen = chroma[1];
+        GrayImage gray = template.gray(level);
+        this.width = gray.width;
+        this.height = gray.height;
+        int count = width * height;
+        this.redGreenSum = template.meanRedGreen * count;
+        this.blueGreenSum = template.meanBlueGreen * count;
+        // Chroma planes store half the channel difference
+        this.maxDifference = tolerance / 2.0 * count;
+        this.stats = stats;
+    }
+
+    @Override
+    public double score(int x, int y) {
+        return rejects(x, y) ? Double.NEGATIVE_INFINITY : scorer.score(x, y);
+    }
+
+    @Override
+    public double score(int x, int y, double floor) {
+        return rejects(x, y) ? Double.NEGATIVE_INFINITY : scorer.score(x, y, floor);
+    }
+
+    private boolean rejects(int x, int y) {
+        boolean rejected = Math.abs(redGreen.sum(x, y, width, height) - redGreenSum) > maxDifference
+                || Math.abs(blueGreen.sum(x, y, width, height) - blueGreenSum) > maxDifference;
+        if (stats != null) {
+            stats.record(1, rejected ? 1 : 0);
+        }
+        return rejected;
+    }
+}
@@ -0,0 +1,42 @@
+package com.automation.helper.matcher;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts what MatchOptions.colourPrefilter skipped. Searches add to it, so
+// use a fresh instance (or reset()) per search to get per-search figures.
+// Thread-safe; row bands of one search update it concurrently.
+public final class PrefilterStats {
+    private final LongAdder windows = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    void record(long windowCount, long rejectedCount) {
+        windows.add(windowCount);
+        rejected.add(rejectedCount);
+    }
+
+    // Windows the prefilter looked at
+    public long getWindows() {
+        return windows.sum();
+    }
+
+    // Windows it skipped without scoring
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public double getRejectionRate() {
+        long total = getWindows();
+        return total == 0 ? 0 : (double) getRejected() / total;
+    }
+
+    public void reset() {
+        windows.reset();
+        rejected.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d windows rejected (%.1f%%)", getRejected(), getWindows(),
+                100 * getRejectionRate());
+    }
+}
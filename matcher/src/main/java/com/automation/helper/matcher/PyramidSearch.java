@@ -0,0 +1,226 @@
+package com.automation.helper.matcher;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+// Coarse-to-fine template search over the box pyramids of source and template.
+// The coarsest level is scanned exhaustively and its best few peaks are kept;
+// each peak is then refined within +/-2 px on every finer level. Full
+// resolution is scored with the requested mode's own scorer, so final scores
+// mean the same as a plain full-resolution scan.
+final class PyramidSearch {
+    private static final Logger LOG = Logger.getLogger("ImageMatcher");
+    // Smallest template side worth matching on; coarser levels are skipped
+    static final int MIN_TEMPLATE_SIDE = 8;
+    // Downsampling floors coordinates, so a peak at x on level n+1 lies in
+    // [2x - 1, 2x + 2] on level n
+    static final int REFINE_RADIUS = 2;
+    // Rows per band below which forking costs more than it saves
+    static final int MIN_BAND_ROWS = 8;
+
+    private PyramidSearch() {}
+
+    // Best full-resolution positions, highest score first. Throws
+    // CancellationException if the options' token is cancelled mid-search.
+    static Candidates search(SourceImage source, CompiledTemplate template, MatchOptions options) {
+        int top = searchTop(template, options, MIN_TEMPLATE_SIDE);
+        Candidates coarse = scanTop(source, template, options, top, Double.NEGATIVE_INFINITY);
+        return refine(source, template, options, top, coarse);
+    }
+
+    // Best peaks of an exhaustive scan of level `top`. With early abandon,
+    // windows that cannot beat minScore are dropped unscored, so only peaks
+    // above it are guaranteed to be kept.
+    static Candidates scanTop(SourceImage source, CompiledTemplate template, MatchOptions options, int top,
+                              double minScore) {
+        GrayImage sourceTop = source.level(top);
+        GrayImage templateTop = template.gray(top);
+        WindowScorer scorer = scorer(options, top, source, template, true);
+        checkCancelled(options.getCancellation());
+        return scanAll(scorer, sourceTop.width - templateTop.width, sourceTop.height - templateTop.height,
+                options, minScore);
+    }
+
+    // Follows coarse peaks found on level `top` down to full resolution
+    static Candidates refine(SourceImage source, CompiledTemplate template, MatchOptions options, int top,
+                             Candidates coarse) {
+        CancellationToken token = options.getCancellation();
+        Candidates current = coarse;
+        for (int level = top - 1; level >= 0; level--) {
+            GrayImage sourceLevel = source.level(level);
+            GrayImage templateLevel = template.gray(level);
+            int maxX = sourceLevel.width - templateLevel.width;
+            int maxY = sourceLevel.height - templateLevel.height;
+            WindowScorer scorer = scorer(options, level, source, template, false);
+
+            Candidates next = new Candidates(options.getCandidates(), REFINE_RADIUS);
+            for (int i = 0; i < current.size(); i++) {
+                checkCancelled(token);
+                int centerX = current.x(i) * 2;
+                int centerY = current.y(i) * 2;
+                for (int y = Math.max(0, centerY - REFINE_RADIUS); y <= Math.min(maxY, centerY + REFINE_RADIUS); y++) {
+                    for (int x = Math.max(0, centerX - REFINE_RADIUS); x <= Math.min(maxX, centerX + REFINE_RADIUS); x++) {
+                        next.offer(x, y, score(scorer, x, y, next, Double.NEGATIVE_INFINITY, options));
+                    }
+                }
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    // Exhaustive scan of [0, maxX] x [0, maxY], split into row bands on the
+    // search pool. Each band keeps its own candidates and bands are merged
+    // pairwise as the fork/join tree unwinds, so no shared state is locked.
+    private static Candidates scanAll(WindowScorer scorer, int maxX, int maxY, MatchOptions options,
+                                      double minScore) {
+        ForkJoinPool pool = SearchPool.get();
+        int rows = maxY + 1;
+        if (pool == null || rows < 2 * MIN_BAND_ROWS) {
+            return scanBand(scorer, 0, rows, maxX, options, minScore);
+        }
+        int bandRows = Math.max(MIN_BAND_ROWS, rows / (SearchPool.parallelism() * 4));
+        try {
+            return pool.invoke(new BandTask(scorer, 0, rows, bandRows, maxX, options, minScore));
+        } catch (RejectedExecutionException e) {
+            // The pool was resized between get() and invoke()
+            return scanBand(scorer, 0, rows, maxX, options, minScore);
+        }
+    }
+
+    private static Candidates scanBand(WindowScorer scorer, int fromY, int toY, int maxX, MatchOptions options,
+                                       double minScore) {
+        CancellationToken token = options.getCancellation();
+        Candidates band = new Candidates(options.getCandidates(), REFINE_RADIUS);
+        for (int y = fromY; y < toY; y++) {
+            for (int x = 0; x <= maxX; x++) {
+                // A volatile read is noise next to scoring a window, and a
+                // full-resolution row can take tens of milliseconds
+                checkCancelled(token);
+                band.offer(x, y, score(scorer, x, y, band, minScore, options));
+            }
+        }
+        return band;
+    }
+
+    // A window scoring at or below the weakest kept candidate is dropped by
+    // offer() anyway, so early abandon against that floor changes nothing
+    private static double score(WindowScorer scorer, int x, int y, Candidates kept, double minScore,
+                                MatchOptions options) {
+        return options.isEarlyAbandon() ? scorer.score(x, y, Math.max(kept.floor(), minScore))
+                : scorer.score(x, y);
+    }
+
+    static void checkCancelled(CancellationToken token) {
+        if (token != null && token.isCancelled()) {
+            throw new CancellationException("Search cancelled");
+        }
+    }
+
+    private static final class BandTask extends RecursiveTask<Candidates> {
+        private static final long serialVersionUID = 1L;
+        private final WindowScorer scorer;
+        private final int fromY;
+        private final int toY;
+        private final int bandRows;
+        private final int maxX;
+        private final MatchOptions options;
+        private final double minScore;
+
+        BandTask(WindowScorer scorer, int fromY, int toY, int bandRows, int maxX, MatchOptions options,
+                 double minScore) {
+            this.scorer = scorer;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.bandRows = bandRows;
+            this.maxX = maxX;
+            this.options = options;
+            this.minScore = minScore;
+        }
+
+        @Override
+        protected Candidates compute() {
+            if (toY - fromY <= bandRows) {
+                return scanBand(scorer, fromY, toY, maxX, options, minScore);
+            }
+            int middle = (fromY + toY) >>> 1;
+            BandTask top = new BandTask(scorer, fromY, middle, bandRows, maxX, options, minScore);
+            top.fork();
+            Candidates bottom = new BandTask(scorer, middle, toY, bandRows, maxX, options, minScore).compute();
+            Candidates merged = top.join();
+            merged.offerAll(bottom);
+            return merged;
+        }
+    }
+
+    // Level the exhaustive scan starts on: as coarse as the options allow
+    // while the template keeps minSide pixels per side
+    static int searchTop(CompiledTemplate template, MatchOptions options, int minSide) {
+        int top = Math.min(template.topLevel(),
+                topLevel(template.getWidth(), template.getHeight(), options.getMaxPyramidLevel(), minSide));
+        if (options.getMode() == MatchMode.NCC) {
+            // Small features can average out on coarse levels; NCC needs contrast
+            while (top > 0 && template.level(top).isFlat()) {
+                top--;
+            }
+        }
+        return top;
+    }
+
+    static int topLevel(int templateWidth, int templateHeight, int maxLevel, int minSide) {
+        int side = Math.min(templateWidth, templateHeight);
+        int level = 0;
+        while (level < maxLevel && (side >> (level + 1)) >= minSide) {
+            level++;
+        }
+        return level;
+    }
+
+    // Exhaustive levels score every position, so they use the source's
+    // integral image (and FFTs, if that is cheaper) and go through the colour
+    // prefilter, if enabled; refine levels only score a few dozen positions
+    static WindowScorer scorer(MatchOptions options, int level, SourceImage source, CompiledTemplate template,
+                               boolean exhaustive) {
+        WindowScorer scorer = modeScorer(options, level, source, template, exhaustive);
+        if (!exhaustive || options.getColourPrefilter() == 0 || template.level(level).samples != null) {
+            return scorer;
+        }
+        return new PrefilterScorer(scorer, source.chroma(level), template, level, options.getColourPrefilter(),
+                options.getPrefilterStats());
+    }
+
+    private static WindowScorer modeScorer(MatchOptions options, int level, SourceImage source,
+                                           CompiledTemplate template, boolean exhaustive) {
+        GrayImage sourceLevel = source.level(level);
+        CompiledTemplate.Level templateLevel = template.level(level);
+        if (options.getMode() == MatchMode.NCC) {
+            // Masked and sparse templates do not correlate over the full box
+            if (!exhaustive || templateLevel.samples != null) {
+                return new NccScorer(sourceLevel, templateLevel);
+            }
+            MatchOptions.Backend backend = options.getBackend();
+            if (backend == MatchOptions.Backend.FFT && !FftNccScorer.fits(sourceLevel)) {
+                LOG.warning("Source level " + sourceLevel.width + "x" + sourceLevel.height
+                        + " is too large for the FFT backend; scanning spatially");
+                backend = MatchOptions.Backend.SPATIAL;
+            }
+            boolean fftCheaper = FftNccScorer.preferred(sourceLevel, templateLevel.gray, source.hasSpectrum(level));
+            if (backend == MatchOptions.Backend.FFT || (backend == MatchOptions.Backend.AUTO && fftCheaper)) {
+                return new FftNccScorer(source, level, templateLevel.gray);
+            }
+            return new NccScorer(sourceLevel, source.integral(level), templateLevel);
+        }
+        // Only full-resolution SAD scores are compared with the threshold;
+        // coarse luma scores are not on the same scale
+        if (level == 0) {
+            return new SadScorer(source.pixels, template, options.getThreshold());
+        }
+        // The block-sum bound pays for its integral image only over a full scan
+        return exhaustive && options.isEarlyAbandon()
+                ? new GraySadScorer(sourceLevel, source.integral(level), templateLevel)
+                : new GraySadScorer(sourceLevel, templateLevel);
+    }
+}
@@ -0,0 +1,99 @@
+package com.automation.helper.matcher;
+
+// MatchMode.SAD: colour sum of absolute differences mapped to [0, 1]
+final class SadScorer implements WindowScorer {
+    private final PixelBuffer source;
+    private final PixelBuffer template;
+    private final long maxDiff;
+    // Scores below this are never reported, so early abandon may give up on them
+    private final double minScore;
+    // Early-abandon order: source offset relative to the window origin and
+    // template pixel, most distinctive first
+    private final int[] orderedOffsets;
+    private final int[] orderedPixels;
+    // Masked or sparse template: only the ordered pixels are compared
+    private final boolean sampled;
+
+    SadScorer(PixelBuffer source, CompiledTemplate template) {
+        this(source, template, Double.NEGATIVE_INFINITY);
+    }
+
+    SadScorer(PixelBuffer source, CompiledTemplate compiled, double minScore) {
+        this.source = source;
+        this.template = compiled.pixels;
+        this.maxDiff = 255L * 3 * compiled.level(0).count(); // RGB components
+        this.minScore = minScore;
+        this.sampled = compiled.level(0).samples != null;
+
+        // The compiled copy is compact, so pixel i sits at index i
+        int templateWidth = template.getWidth();
+        int[] order = compiled.colourOrder;
+        orderedOffsets = new int[order.length];
+        orderedPixels = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            orderedOffsets[k] = (i / templateWidth) * source.getStride() + i % templateWidth;
+            orderedPixels[k] = template.getPixels()[i];
+        }
+    }
+
+    @Override
+    public double score(int startX, int startY) {
+        if (sampled) {
+            return scoreOrdered(startX, startY, Double.POSITIVE_INFINITY);
+        }
+        int templateWidth = template.getWidth();
+        int templateHeight = template.getHeight();
+        int[] sourcePixels = source.getPixels();
+        int[] templatePixels = template.getPixels();
+        int sourceStride = source.getStride();
+        int templateStride = template.getStride();
+
+        long totalDiff = 0;
+        int sourceRow = source.getOffset() + startY * sourceStride + startX;
+        int templateRow = template.getOffset();
+        for (int y = 0; y < templateHeight; y++) {
+            // A single row sums to at most 765 * width, so an int is enough here
+            int rowDiff = 0;
+            for (int x = 0; x < templateWidth; x++) {
+                int sourcePixel = sourcePixels[sourceRow + x];
+                int templatePixel = templatePixels[templateRow + x];
+
+                rowDiff += Math.abs(((sourcePixel >> 16) & 0xFF) - ((templatePixel >> 16) & 0xFF))
+                        + Math.abs(((sourcePixel >> 8) & 0xFF) - ((templatePixel >> 8) & 0xFF))
+                        + Math.abs((sourcePixel & 0xFF) - (templatePixel & 0xFF));
+            }
+            totalDiff += rowDiff;
+            sourceRow += sourceStride;
+            templateRow += templateStride;
+        }
+
+        // Convert to similarity score (0 to 1)
+        return 1.0 - ((double) totalDiff / maxDiff);
+    }
+
+    @Override
+    public double score(int startX, int startY, double floor) {
+        // Any difference above this leaves the score at or below the bound
+        return scoreOrdered(startX, startY, (1.0 - Math.max(floor, minScore)) * maxDiff);
+    }
+
+    private double scoreOrdered(int startX, int startY, double budget) {
+        int[] sourcePixels = source.getPixels();
+        int[] offsets = orderedOffsets;
+        int[] pixels = orderedPixels;
+        int base = source.getOffset() + startY * source.getStride() + startX;
+        long totalDiff = 0;
+        for (int k = 0; k < offsets.length; k++) {
+            int sourcePixel = sourcePixels[base + offsets[k]];
+            int templatePixel = pixels[k];
+            totalDiff += Math.abs(((sourcePixel >> 16) & 0xFF) - ((templatePixel >> 16) & 0xFF))
+                    + Math.abs(((sourcePixel >> 8) & 0xFF) - ((templatePixel >> 8) & 0xFF))
+                    + Math.abs((sourcePixel & 0xFF) - (templatePixel & 0xFF));
+            if (totalDiff > budget) {
+                return Double.NEGATIVE_INFINITY;
+            }
+        }
+        return 1.0 - ((double) totalDiff / maxDiff);
+    }
+}
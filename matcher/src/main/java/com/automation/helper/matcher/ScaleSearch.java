@@ -0,0 +1,185 @@
+package com.automation.helper.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Template search over a range of scales (MatchOptions.scales). Every scale
+// is scanned on one shared coarse level of the same source pyramid, where
+// their scores are comparable, and only the most promising scales are
+// refined to full resolution.
+final class ScaleSearch {
+    // Ratio between neighbouring scales. Coarse levels still find a template
+    // that is about 5% off in size, but thin strokes drift apart at full
+    // resolution after 2%, so the winning scale is polished afterwards.
+    static final double SCALE_STEP = 1.1;
+    // Scales whose coarse peaks are refined
+    private static final int REFINED_SCALES = 2;
+    // Scales tried on each side of the winner, spanning half a step
+    private static final int POLISH_STEPS = 4;
+
+    private ScaleSearch() {}
+
+    static final class Match {
+        final CompiledTemplate template;
+        final double scale;
+        // Full-resolution peaks at this scale, highest score first
+        final Candidates best;
+
+        Match(CompiledTemplate template, double scale, Candidates best) {
+            this.template = template;
+            this.scale = scale;
+            this.best = best;
+        }
+    }
+
+    // Best scale and its peaks, or null when the template is larger than
+    // the source at every scale. Throws CancellationException if cancelled.
+    static Match search(SourceImage source, CompiledTemplate template, MatchOptions options) {
+        List<CompiledTemplate> templates = new ArrayList<>();
+        List<Double> fitting = new ArrayList<>();
+        for (double scale : scales(options.getMinScale(), options.getMaxScale())) {
+            CompiledTemplate scaled = template.scaled(scale);
+            if (scaled.getWidth() <= source.pixels.getWidth() && scaled.getHeight() <= source.pixels.getHeight()) {
+                templates.add(scaled);
+                fitting.add(scale);
+            }
+        }
+        if (templates.isEmpty()) {
+            return null;
+        }
+        if (templates.size() == 1) {
+            return new Match(templates.get(0), fitting.get(0),
+                    PyramidSearch.search(source, templates.get(0), options));
+        }
+
+        // The smallest template decides how coarse the shared level can be
+        int top = Integer.MAX_VALUE;
+        for (CompiledTemplate scaled : templates) {
+            top = Math.min(top, PyramidSearch.searchTop(scaled, options, PyramidSearch.MIN_TEMPLATE_SIDE));
+        }
+
+        // Scales are tried nearest to 1 first, so the likeliest one sets the
+        // bar early; with early abandon, later scales stop scoring windows
+        // that could not make it into the refined few
+        Candidates[] coarse = new Candidates[templates.size()];
+        double[] coarseBest = new double[templates.size()];
+        for (int i = 0; i < templates.size(); i++) {
+            double bar = kthBest(coarseBest, i, REFINED_SCALES);
+            coarse[i] = PyramidSearch.scanTop(source, templates.get(i), options, top, bar);
+            coarseBest[i] = coarse[i].size() > 0 ? coarse[i].score(0) : Double.NEGATIVE_INFINITY;
+        }
+
+        Match best = null;
+        for (int refined = 0; refined < REFINED_SCALES; refined++) {
+            int i = indexOfMax(coarseBest);
+            if (i < 0) {
+                break;
+            }
+            coarseBest[i] = Double.NEGATIVE_INFINITY;
+            Candidates peaks = PyramidSearch.refine(source, templates.get(i), options, top, coarse[i]);
+            if (peaks.size() == 0) {
+                continue;
+            }
+            // Full-resolution scores of slightly wrong sizes do not rank
+            // scales reliably, so each one is polished before comparing
+            Match polished = polish(source, template, options, new Match(templates.get(i), fitting.get(i), peaks));
+            if (best == null || polished.best.score(0) > best.best.score(0)) {
+                best = polished;
+            }
+        }
+        if (best == null) {
+            // Nothing beat the early-abandon bar at any scale
+            return new Match(templates.get(0), fitting.get(0),
+                    new Candidates(options.getCandidates(), PyramidSearch.REFINE_RADIUS));
+        }
+        return best;
+    }
+
+    // Tries scales between the steps around match, keeping the centre of
+    // its best peak. Only a few windows per scale are scored, so this costs
+    // less than refining one more scale.
+    private static Match polish(SourceImage source, CompiledTemplate template, MatchOptions options,
+                                Match match) {
+        int centerX = match.best.x(0) + match.template.getWidth() / 2;
+        int centerY = match.best.y(0) + match.template.getHeight() / 2;
+        double ratio = Math.pow(SCALE_STEP, 0.5 / POLISH_STEPS);
+        Match best = match;
+        for (int k = -POLISH_STEPS; k <= POLISH_STEPS; k++) {
+            double scale = match.scale * Math.pow(ratio, k);
+            if (k == 0 || scale < options.getMinScale() || scale > options.getMaxScale()) {
+                continue;
+            }
+            PyramidSearch.checkCancelled(options.getCancellation());
+            CompiledTemplate scaled = template.scaled(scale, false);
+            int maxX = source.pixels.getWidth() - scaled.getWidth();
+            int maxY = source.pixels.getHeight() - scaled.getHeight();
+            if (maxX < 0 || maxY < 0) {
+                continue;
+            }
+            int originX = centerX - scaled.getWidth() / 2;
+            int originY = centerY - scaled.getHeight() / 2;
+            WindowScorer scorer = PyramidSearch.scorer(options, 0, source, scaled, false);
+            Candidates peaks = new Candidates(options.getCandidates(), PyramidSearch.REFINE_RADIUS);
+            int radius = PyramidSearch.REFINE_RADIUS;
+            for (int y = Math.max(0, originY - radius); y <= Math.min(maxY, originY + radius); y++) {
+                for (int x = Math.max(0, originX - radius); x <= Math.min(maxX, originX + radius); x++) {
+                    peaks.offer(x, y, scorer.score(x, y));
+                }
+            }
+            if (peaks.size() > 0 && peaks.score(0) > best.best.score(0)) {
+                best = new Match(scaled, scale, peaks);
+            }
+        }
+        // Keep the polished size, so later searches at this scale hit the cache
+        return best == match ? match : new Match(template.scaled(best.scale), best.scale, best.best);
+    }
+
+    // Geometric steps of at most SCALE_STEP covering [min, max], including
+    // 1 when it is in range, ordered by distance from 1
+    static double[] scales(double min, double max) {
+        int steps = (int) Math.ceil(Math.log(max / min) / Math.log(SCALE_STEP) - 1e-9);
+        double[] scales = new double[steps + 1];
+        for (int i = 0; i <= steps; i++) {
+            scales[i] = steps == 0 ? min : min * Math.pow(max / min, (double) i / steps);
+        }
+        if (min <= 1 && max >= 1) {
+            int nearest = 0;
+            for (int i = 1; i < scales.length; i++) {
+                if (Math.abs(Math.log(scales[i])) < Math.abs(Math.log(scales[nearest]))) {
+                    nearest = i;
+                }
+            }
+            scales[nearest] = 1.0;
+        }
+        Double[] boxed = new Double[scales.length];
+        for (int i = 0; i < scales.length; i++) {
+            boxed[i] = scales[i];
+        }
+        Arrays.sort(boxed, (a, b) -> Double.compare(Math.abs(Math.log(a)), Math.abs(Math.log(b))));
+        for (int i = 0; i < scales.length; i++) {
+            scales[i] = boxed[i];
+        }
+        return scales;
+    }
+
+    // k-th highest of values[0, count), or -Infinity if there are fewer
+    private static double kthBest(double[] values, int count, int k) {
+        if (count < k) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted[count - k];
+    }
+
+    private static int indexOfMax(double[] values) {
+        int best = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] > Double.NEGATIVE_INFINITY && (best < 0 || values[i] > values[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,60 @@
+package com.automation.helper.matcher;
+
+// 256-bit difference hash (dHash) of a whole frame, for telling app screens
+// apart: the luma is averaged down to 17x16 cells and each bit says whether
+// a cell is darker than its right neighbour. Layout decides the bits, not
+// pixel detail, so the same screen with another clock time or badge count
+// stays within a few bits while different screens are dozens apart.
+public final class ScreenHash {
+    public static final int BITS = 256;
+    public static final int LONGS = BITS / 64;
+    private static final int COLUMNS = 17;
+    private static final int ROWS = 16;
+    // Every other pixel in both directions is plenty for 17x16 averages
+    private static final int SAMPLE_STEP = 2;
+
+    private ScreenHash() {}
+
+    public static long[] of(PixelBuffer frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int[] pixels = frame.getPixels();
+        long[] sums = new long[COLUMNS * ROWS];
+        int[] counts = new int[COLUMNS * ROWS];
+        int[] columnOf = new int[width];
+        for (int x = 0; x < width; x++) {
+            columnOf[x] = (int) ((long) x * COLUMNS / width);
+        }
+        for (int y = 0; y < height; y += SAMPLE_STEP) {
+            int row = frame.getOffset() + y * frame.getStride();
+            int cellRow = (int) ((long) y * ROWS / height) * COLUMNS;
+            for (int x = 0; x < width; x += SAMPLE_STEP) {
+                int cell = cellRow + columnOf[x];
+                sums[cell] += GrayImage.luma(pixels[row + x]);
+                counts[cell]++;
+            }
+        }
+
+        long[] hash = new long[LONGS];
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLUMNS - 1; c++) {
+                int left = r * COLUMNS + c;
+                // Compare means without dividing: a/n < b/m  <=>  a*m < b*n
+                if (sums[left] * counts[left + 1] < sums[left + 1] * counts[left]) {
+                    int bit = r * (COLUMNS - 1) + c;
+                    hash[bit >> 6] |= 1L << (bit & 63);
+                }
+            }
+        }
+        return hash;
+    }
+
+    // Number of differing bits, 0-256
+    public static int distance(long[] a, long[] b) {
+        int distance = 0;
+        for (int i = 0; i < LONGS; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+        return distance;
+    }
+}
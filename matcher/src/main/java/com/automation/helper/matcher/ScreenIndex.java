@@ -0,0 +1,108 @@
+package com.automation.helper.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Known screens by ScreenHash, searchable by Hamming distance. Multi-index
+// hashing: the 256 bits are cut into 16 chunks of 16, and two hashes within
+// 15 bits of each other agree exactly on at least one chunk, so a lookup
+// only compares the screens that share a chunk with the frame, a handful
+// among hundreds. Wider lookups fall back to comparing every screen.
+// (A BK-tree prunes next to nothing at these distances in 256 bits.)
+// Not thread-safe; one instance per runner.
+public final class ScreenIndex<T> {
+    private static final int CHUNKS = 16;
+    private static final int CHUNK_BITS = ScreenHash.BITS / CHUNKS;
+    // Widest lookup the chunk tables answer on their own
+    public static final int MAX_INDEXED_DISTANCE = CHUNKS - 1;
+
+    private final List<long[]> hashes = new ArrayList<>();
+    private final List<T> values = new ArrayList<>();
+    // Per chunk, (chunk value << 32 | screen) sorted; rebuilt after adds
+    private long[][] tables;
+
+    public void add(long[] hash, T value) {
+        if (hash == null || hash.length != ScreenHash.LONGS) {
+            throw new IllegalArgumentException("Not a ScreenHash");
+        }
+        hashes.add(hash.clone());
+        values.add(value);
+        tables = null;
+    }
+
+    public int size() {
+        return hashes.size();
+    }
+
+    // Closest screen within maxDistance bits, or null
+    public Match<T> nearest(long[] hash, int maxDistance) {
+        List<Match<T>> matches = within(hash, maxDistance);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    // Every screen within maxDistance bits, closest first
+    public List<Match<T>> within(long[] hash, int maxDistance) {
+        List<Match<T>> matches = new ArrayList<>();
+        if (maxDistance > MAX_INDEXED_DISTANCE) {
+            for (int i = 0; i < hashes.size(); i++) {
+                offer(hash, i, maxDistance, matches);
+            }
+        } else {
+            long[][] chunks = tables();
+            boolean[] seen = new boolean[hashes.size()];
+            for (int c = 0; c < CHUNKS; c++) {
+                long[] table = chunks[c];
+                long key = chunk(hash, c) << 32;
+                // First entry with this chunk value, if any
+                int at = Arrays.binarySearch(table, key);
+                at = at < 0 ? -at - 1 : at;
+                for (; at < table.length && (table[at] & 0xFFFFFFFF00000000L) == key; at++) {
+                    int screen = (int) table[at];
+                    if (!seen[screen]) {
+                        seen[screen] = true;
+                        offer(hash, screen, maxDistance, matches);
+                    }
+                }
+            }
+        }
+        matches.sort((a, b) -> Integer.compare(a.distance, b.distance));
+        return matches;
+    }
+
+    private void offer(long[] hash, int screen, int maxDistance, List<Match<T>> matches) {
+        int distance = ScreenHash.distance(hash, hashes.get(screen));
+        if (distance <= maxDistance) {
+            matches.add(new Match<>(values.get(screen), distance));
+        }
+    }
+
+    private long[][] tables() {
+        if (tables == null) {
+            long[][] built = new long[CHUNKS][hashes.size()];
+            for (int c = 0; c < CHUNKS; c++) {
+                for (int i = 0; i < hashes.size(); i++) {
+                    built[c][i] = chunk(hashes.get(i), c) << 32 | i;
+                }
+                Arrays.sort(built[c]);
+            }
+            tables = built;
+        }
+        return tables;
+    }
+
+    private static long chunk(long[] hash, int c) {
+        int bit = c * CHUNK_BITS;
+        return (hash[bit >> 6] >>> (bit & 63)) & ((1L << CHUNK_BITS) - 1);
+    }
+
+    public static final class Match<T> {
+        public final T value;
+        public final int distance; // Differing bits
+
+        Match(T value, int distance) {
+            this.value = value;
+            this.distance = distance;
+        }
+    }
+}
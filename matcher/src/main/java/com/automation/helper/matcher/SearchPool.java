@@ -0,0 +1,45 @@
+package com.automation.helper.matcher;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+// Dedicated, bounded pool for band-parallel scans. Kept apart from the common
+// pool so matching never competes with (or starves) unrelated parallel work.
+final class SearchPool {
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+    private static ForkJoinPool pool;
+
+    private SearchPool() {}
+
+    static synchronized void setParallelism(int threads) {
+        threads = Math.max(1, threads);
+        if (threads == parallelism) {
+            return;
+        }
+        parallelism = threads;
+        if (pool != null) {
+            // Running searches finish on the old pool; new ones use the new size
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    static synchronized int parallelism() {
+        return parallelism;
+    }
+
+    // Null when searches should run on the calling thread
+    static synchronized ForkJoinPool get() {
+        if (parallelism <= 1) {
+            return null;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("ImageMatcher-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+}
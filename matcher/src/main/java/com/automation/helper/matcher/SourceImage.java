@@ -0,0 +1,120 @@
+package com.automation.helper.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Source-side work shared by every template searched in one frame: the luma
+// pyramid, an integral image per level, the forward FFT of each level and
+// the frame's keypoints.
+// Everything is built on first use, so a single findImage pays only for what
+// its search touches. Not thread-safe; one instance per search call.
+final class SourceImage {
+    final PixelBuffer pixels;
+    private final List<GrayImage> levels = new ArrayList<>();
+    private final List<IntegralImage> integrals = new ArrayList<>();
+    private final List<double[][]> spectra = new ArrayList<>();
+    private final List<IntegralImage[]> chroma = new ArrayList<>();
+    private Keypoints keypoints;
+
+    SourceImage(PixelBuffer pixels) {
+        this.pixels = pixels;
+    }
+
+    GrayImage level(int level) {
+        if (levels.isEmpty()) {
+            levels.add(GrayImage.of(pixels));
+        }
+        while (levels.size() <= level) {
+            levels.add(levels.get(levels.size() - 1).downsample());
+        }
+        return levels.get(level);
+    }
+
+    IntegralImage integral(int level) {
+        while (integrals.size() <= level) {
+            integrals.add(null);
+        }
+        IntegralImage integral = integrals.get(level);
+        if (integral == null) {
+            integral = new IntegralImage(level(level));
+            integrals.set(level, integral);
+        }
+        return integral;
+    }
+
+    // Integral images of (R - G) / 2 + 128 and (B - G) / 2 + 128 averaged
+    // over the same boxes as level(level), for MatchOptions.colourPrefilter.
+    // Built straight from the colour pixels; no full-resolution plane is kept.
+    IntegralImage[] chroma(int level) {
+        while (chroma.size() <= level) {
+            chroma.add(null);
+        }
+        IntegralImage[] planes = chroma.get(level);
+        if (planes == null) {
+            GrayImage size = level(level);
+            int box = 1 << level;
+            byte[] redGreen = new byte[size.width * size.height];
+            byte[] blueGreen = new byte[redGreen.length];
+            for (int y = 0; y < size.height; y++) {
+                for (int x = 0; x < size.width; x++) {
+                    int totalRedGreen = 0;
+                    int totalBlueGreen = 0;
+                    for (int dy = 0; dy < box; dy++) {
+                        int sy = Math.min(y * box + dy, pixels.getHeight() - 1);
+                        for (int dx = 0; dx < box; dx++) {
+                            int p = pixels.getPixel(Math.min(x * box + dx, pixels.getWidth() - 1), sy);
+                            totalRedGreen += CompiledTemplate.redGreen(p);
+                            totalBlueGreen += CompiledTemplate.blueGreen(p);
+                        }
+                    }
+                    int area = box * box;
+                    redGreen[y * size.width + x] = (byte) ((totalRedGreen + area / 2) / area);
+                    blueGreen[y * size.width + x] = (byte) ((totalBlueGreen + area / 2) / area);
+                }
+            }
+            planes = new IntegralImage[] {
+                    new IntegralImage(new GrayImage(size.width, size.height, redGreen)),
+                    new IntegralImage(new GrayImage(size.width, size.height, blueGreen)) };
+            chroma.set(level, planes);
+        }
+        return planes;
+    }
+
+    // MatchMode.FEATURES keypoints of the full-resolution luma
+    Keypoints keypoints() {
+        if (keypoints == null) {
+            keypoints = Keypoints.detect(level(0), FeatureMatcher.FRAME_KEYPOINTS);
+        }
+        return keypoints;
+    }
+
+    boolean hasSpectrum(int level) {
+        return level < spectra.size() && spectra.get(level) != null;
+    }
+
+    // Forward transform of the level zero-padded to fft's size, as {re, im}.
+    // The padded size depends only on the source, so every template shares it.
+    // Callers must not modify the returned planes.
+    double[][] spectrum(int level, Fft fft) {
+        while (spectra.size() <= level) {
+            spectra.add(null);
+        }
+        double[][] spectrum = spectra.get(level);
+        if (spectrum == null) {
+            GrayImage image = level(level);
+            double[] re = new double[fft.width * fft.height];
+            double[] im = new double[re.length];
+            for (int y = 0; y < image.height; y++) {
+                int in = y * image.width;
+                int out = y * fft.width;
+                for (int x = 0; x < image.width; x++) {
+                    re[out + x] = image.data[in + x] & 0xFF;
+                }
+            }
+            fft.forward(re, im);
+            spectrum = new double[][] { re, im };
+            spectra.set(level, spectrum);
+        }
+        return spectrum;
+    }
+}
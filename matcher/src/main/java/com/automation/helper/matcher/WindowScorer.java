@@ -0,0 +1,13 @@
+package com.automation.helper.matcher;
+
+// Similarity of the template against the source window whose top-left corner
+// is (x, y). Higher is better; the range depends on the MatchMode.
+interface WindowScorer {
+    double score(int x, int y);
+
+    // Same as score(x, y) when that exceeds floor; otherwise any value <= floor.
+    // Scorers that can prove a window loses part-way through stop there.
+    default double score(int x, int y, double floor) {
+        return score(x, y);
+    }
+}
@@ -0,0 +1,60 @@
+package com.automation.helper.matcher;
+
+import static com.automation.helper.matcher.TestFrames.copy;
+import static com.automation.helper.matcher.TestFrames.frame;
+import static com.automation.helper.matcher.TestFrames.icon;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class CompiledTemplateTest {
+    @Test
+    public void sameContentSharesOneCompile() {
+        PixelBuffer template = icon(32, 24, new Random(40));
+        CompiledTemplate compiled = CompiledTemplate.of(template);
+
+        assertSame(compiled, CompiledTemplate.of(copy(template)));
+        PixelBuffer changed = copy(template);
+        changed.getPixels()[5] ^= 0x010101;
+        assertNotSame(compiled, CompiledTemplate.of(changed));
+    }
+
+    @Test
+    public void refilledBufferIsCompiledAgain() {
+        Random random = new Random(41);
+        PixelBuffer frame = frame(random);
+        // A caller reusing one array for every template it loads
+        PixelBuffer buffer = copy(frame.region(60, 70, 40, 40));
+        CompiledTemplate first = CompiledTemplate.of(buffer);
+        System.arraycopy(copy(frame.region(300, 180, 40, 40)).getPixels(), 0, buffer.getPixels(), 0, 40 * 40);
+        CompiledTemplate second = CompiledTemplate.of(buffer);
+
+        assertNotSame(first, second);
+        // Each kept its own copy of the pixels
+        assertEquals(60, ImageMatcher.findImage(frame, first, null).x);
+        assertEquals(300, ImageMatcher.findImage(frame, second, null).x);
+    }
+
+    @Test
+    public void derivedVersionsAreKeptUpToTheirBound() {
+        CompiledTemplate template = CompiledTemplate.of(icon(64, 48, new Random(42)));
+
+        assertSame(template, template.scaled(1.0));
+        assertSame(template, template.sampled(0));
+        CompiledTemplate half = template.scaled(0.5);
+        assertSame(half, template.scaled(0.5));
+        assertEquals(32, half.getWidth());
+        assertEquals(24, half.getHeight());
+        CompiledTemplate sparse = template.sampled(200);
+        assertSame(sparse, template.sampled(200));
+
+        // Many other sizes push the least recently used one out
+        for (int i = 0; i < 20; i++) {
+            template.scaled(0.6 + i * 0.05);
+        }
+        assertNotSame(half, template.scaled(0.5));
+    }
+}
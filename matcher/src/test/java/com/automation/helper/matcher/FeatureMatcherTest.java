@@ -0,0 +1,49 @@
+package com.automation.helper.matcher;
+
+import static com.automation.helper.matcher.TestFrames.copy;
+import static com.automation.helper.matcher.TestFrames.fillRect;
+import static com.automation.helper.matcher.TestFrames.frame;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class FeatureMatcherTest {
+    @Test
+    public void defaultThresholdFollowsMode() {
+        assertEquals(ImageMatcher.DEFAULT_THRESHOLD, new MatchOptions().getThreshold(), 0);
+        assertEquals(ImageMatcher.DEFAULT_FEATURES_THRESHOLD,
+                new MatchOptions().mode(MatchMode.FEATURES).getThreshold(), 0);
+        assertEquals(0.5, new MatchOptions().mode(MatchMode.FEATURES).threshold(0.5).getThreshold(), 0);
+    }
+
+    @Test
+    public void coveredTargetIsFoundWithDefaultOptions() {
+        PixelBuffer frame = frame(new Random(50));
+        PixelBuffer card = copy(frame.region(150, 90, 160, 120));
+        // Left half hidden behind a toast
+        PixelBuffer covered = copy(frame);
+        fillRect(covered, 130, 100, 100, 100, 0xFF303030);
+
+        ImageMatcher.MatchResult result = ImageMatcher.findImage(covered, card,
+                new MatchOptions().mode(MatchMode.FEATURES));
+
+        assertNotNull(result);
+        assertTrue("score " + result.score, result.score < ImageMatcher.DEFAULT_THRESHOLD);
+        assertTrue(Math.abs(result.getCenterX() - 230) <= 3);
+        assertTrue(Math.abs(result.getCenterY() - 150) <= 3);
+    }
+
+    @Test
+    public void cancelledFeatureSearchReturnsNull() {
+        PixelBuffer frame = frame(new Random(51));
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        assertNull(ImageMatcher.findImage(frame, copy(frame.region(150, 90, 160, 120)),
+                new MatchOptions().mode(MatchMode.FEATURES).cancellation(token)));
+    }
+}
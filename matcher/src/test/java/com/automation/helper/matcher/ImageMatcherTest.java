@@ -0,0 +1,401 @@
+package com.automation.helper.matcher;
+
+import static com.automation.helper.matcher.TestFrames.HEIGHT;
+import static com.automation.helper.matcher.TestFrames.WIDTH;
+import static com.automation.helper.matcher.TestFrames.copy;
+import static com.automation.helper.matcher.TestFrames.fillRect;
+import static com.automation.helper.matcher.TestFrames.frame;
+import static com.automation.helper.matcher.TestFrames.icon;
+import static com.automation.helper.matcher.TestFrames.paste;
+import static com.automation.helper.matcher.TestFrames.shift;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ImageMatcherTest {
+    // Per-channel noise that keeps a copy above the default threshold
+    private static final int LOOK_ALIKE_NOISE = 40;
+
+    @Test
+    public void scorersAgreeOnExactCopy() {
+        PixelBuffer frame = frame(new Random(1));
+        PixelBuffer template = copy(frame.region(137, 81, 48, 32));
+        MatchOptions exhaustive = new MatchOptions().maxPyramidLevel(0);
+
+        ImageMatcher.MatchResult sad = ImageMatcher.findImage(frame, template, exhaustive);
+        ImageMatcher.MatchResult ncc = ImageMatcher.findImage(frame, template,
+                exhaustive.mode(MatchMode.NCC).backend(MatchOptions.Backend.SPATIAL));
+        ImageMatcher.MatchResult fft = ImageMatcher.findImage(frame, template,
+                exhaustive.backend(MatchOptions.Backend.FFT));
+
+        assertAt(sad, 137, 81);
+        assertAt(ncc, 137, 81);
+        assertAt(fft, 137, 81);
+        assertEquals(1.0, sad.score, 1e-9);
+        assertEquals(1.0, ncc.score, 1e-6);
+        assertEquals(ncc.score, fft.score, 1e-6);
+    }
+
+    @Test
+    public void spatialAndFftNccAgreeOnChangedScreen() {
+        PixelBuffer frame = frame(new Random(2));
+        PixelBuffer template = copy(frame.region(300, 200, 40, 40));
+        // Brighter and slightly noisier than when the template was taken
+        PixelBuffer changed = copy(frame);
+        Random noise = new Random(3);
+        int[] pixels = changed.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = shift(pixels[i], 30 + noise.nextInt(9) - 4);
+        }
+        MatchOptions options = new MatchOptions().mode(MatchMode.NCC).maxPyramidLevel(0).threshold(0.5);
+
+        ImageMatcher.MatchResult spatial = ImageMatcher.findImage(changed, template,
+                options.backend(MatchOptions.Backend.SPATIAL));
+        ImageMatcher.MatchResult fft = ImageMatcher.findImage(changed, template,
+                options.backend(MatchOptions.Backend.FFT));
+
+        assertAt(spatial, 300, 200);
+        assertAt(fft, 300, 200);
+        assertEquals(spatial.score, fft.score, 1e-6);
+        assertTrue(spatial.score < 1.0);
+    }
+
+    @Test
+    public void forcedFftFallsBackToSpatialOnLargeFrames() {
+        // Pads to 2048x1024, past MAX_FFT_AREA
+        PixelBuffer frame = frame(1100, 600, new Random(17));
+        PixelBuffer template = copy(frame.region(700, 400, 24, 24));
+        MatchOptions options = new MatchOptions().mode(MatchMode.NCC).maxPyramidLevel(0);
+
+        ImageMatcher.MatchResult spatial = ImageMatcher.findImage(frame, template,
+                options.backend(MatchOptions.Backend.SPATIAL));
+        ImageMatcher.MatchResult fft = ImageMatcher.findImage(frame, template,
+                options.backend(MatchOptions.Backend.FFT));
+
+        assertAt(fft, 700, 400);
+        assertEquals(describe(spatial), describe(fft));
+    }
+
+    @Test
+    public void pyramidFindsWhatExhaustiveFinds() {
+        Random random = new Random(4);
+        PixelBuffer frame = frame(random);
+        for (MatchMode mode : Arrays.asList(MatchMode.SAD, MatchMode.NCC)) {
+            for (int i = 0; i < 8; i++) {
+                int w = 24 + random.nextInt(64);
+                int h = 24 + random.nextInt(48);
+                int x = random.nextInt(WIDTH - w);
+                int y = random.nextInt(HEIGHT - h);
+                PixelBuffer template = copy(frame.region(x, y, w, h));
+
+                ImageMatcher.MatchResult exhaustive = ImageMatcher.findImage(frame, template,
+                        new MatchOptions().mode(mode).maxPyramidLevel(0));
+                ImageMatcher.MatchResult pyramid = ImageMatcher.findImage(frame, template,
+                        new MatchOptions().mode(mode));
+
+                assertAt(exhaustive, x, y);
+                assertAt(pyramid, exhaustive.x, exhaustive.y);
+                assertEquals(exhaustive.score, pyramid.score, 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void findAllImagesKeepsOneResultPerInstance() {
+        Random random = new Random(5);
+        PixelBuffer frame = frame(random);
+        PixelBuffer icon = icon(32, 32, random);
+        int[][] at = { { 20, 30 }, { 200, 40 }, { 380, 250 }, { 60, 240 } };
+        for (int[] p : at) {
+            paste(frame, icon, p[0], p[1]);
+        }
+
+        for (MatchMode mode : Arrays.asList(MatchMode.SAD, MatchMode.NCC)) {
+            List<ImageMatcher.MatchResult> results = ImageMatcher.findAllImages(frame, icon,
+                    new MatchOptions().mode(mode).threshold(0.97));
+
+            // Windows a pixel off an instance score nearly as high and are
+            // suppressed, leaving exactly the pasted copies
+            assertEquals(at.length, results.size());
+            List<String> found = new ArrayList<>();
+            for (ImageMatcher.MatchResult r : results) {
+                found.add(r.x + "," + r.y);
+                assertEquals(1.0, r.score, 1e-6);
+            }
+            for (int[] p : at) {
+                assertTrue(mode + " missed " + p[0] + "," + p[1], found.contains(p[0] + "," + p[1]));
+            }
+        }
+    }
+
+    @Test
+    public void findAllImagesHonoursMaxOverlapAndMaxResults() {
+        Random random = new Random(6);
+        PixelBuffer frame = frame(random);
+        PixelBuffer icon = icon(32, 32, random);
+        // Two copies sharing half their width: IoU 1/3. The second covers
+        // the first's right half, which still scores ~0.93 for its left.
+        paste(frame, icon, 100, 100);
+        paste(frame, icon, 116, 100);
+
+        List<ImageMatcher.MatchResult> strict = ImageMatcher.findAllImages(frame, icon,
+                new MatchOptions().threshold(0.9).maxOverlap(0.3));
+        List<ImageMatcher.MatchResult> loose = ImageMatcher.findAllImages(frame, icon,
+                new MatchOptions().threshold(0.9).maxOverlap(0.5));
+        List<ImageMatcher.MatchResult> capped = ImageMatcher.findAllImages(frame, icon,
+                new MatchOptions().threshold(0.9).maxOverlap(0.5).maxResults(1));
+
+        assertEquals(1, strict.size());
+        assertAt(strict.get(0), 116, 100);
+        assertEquals(2, loose.size());
+        assertAt(loose.get(0), 116, 100);
+        assertAt(loose.get(1), 100, 100);
+        assertEquals(1, capped.size());
+    }
+
+    @Test
+    public void weakHitAtHintDoesNotHideExactMatch() {
+        Random random = new Random(10);
+        PixelBuffer frame = frame(random);
+        PixelBuffer template = copy(frame.region(320, 200, 48, 32));
+        // A look-alike where the target used to be, passing the threshold
+        PixelBuffer lookAlike = copy(template);
+        int[] pixels = lookAlike.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = shift(pixels[i], random.nextInt(2 * LOOK_ALIKE_NOISE + 1) - LOOK_ALIKE_NOISE);
+        }
+        paste(frame, lookAlike, 220, 150);
+
+        for (MatchMode mode : Arrays.asList(MatchMode.SAD, MatchMode.NCC)) {
+            ImageMatcher.MatchResult there = ImageMatcher.findImage(frame, template,
+                    new MatchOptions().mode(mode).region(200, 130, 90, 70));
+            assertAt(there, 220, 150);
+            assertTrue(mode + " look-alike scores " + there.score, there.score < 0.95);
+
+            ImageMatcher.MatchResult hinted = ImageMatcher.findImage(frame, template,
+                    new MatchOptions().mode(mode).near(220, 150));
+            assertAt(hinted, 320, 200);
+            assertEquals(1.0, hinted.score, 1e-6);
+        }
+    }
+
+    @Test
+    public void hintAndRegionFindTheTarget() {
+        Random random = new Random(11);
+        PixelBuffer frame = frame(random);
+        PixelBuffer template = copy(frame.region(64, 240, 40, 40));
+
+        for (MatchMode mode : Arrays.asList(MatchMode.SAD, MatchMode.NCC)) {
+            // Still where it was, and moved away from the hint
+            assertAt(ImageMatcher.findImage(frame, template, new MatchOptions().mode(mode).near(64, 240)),
+                    64, 240);
+            assertAt(ImageMatcher.findImage(frame, template, new MatchOptions().mode(mode).near(400, 20)),
+                    64, 240);
+            // Results stay in frame coordinates; a region without it finds nothing
+            assertAt(ImageMatcher.findImage(frame, template,
+                    new MatchOptions().mode(mode).region(40, 200, 120, 100)), 64, 240);
+            assertNull(ImageMatcher.findImage(frame, template,
+                    new MatchOptions().mode(mode).threshold(0.95).region(200, 0, 280, 320)));
+        }
+    }
+
+    @Test
+    public void transparentTemplatePixelsAreIgnored() {
+        Random random = new Random(7);
+        PixelBuffer frame = frame(random);
+        PixelBuffer template = copy(frame.region(210, 120, 40, 40));
+        // Icon with transparent corners whose colour differs from the screen
+        int[] pixels = template.getPixels();
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 40; x++) {
+                if (x < 12 && y < 12 || x >= 28 && y >= 28) {
+                    pixels[y * 40 + x] = 0x00FF00FF;
+                }
+            }
+        }
+
+        for (MatchMode mode : Arrays.asList(MatchMode.SAD, MatchMode.NCC)) {
+            for (int level : new int[] { 0, 3 }) {
+                ImageMatcher.MatchResult result = ImageMatcher.findImage(frame, template,
+                        new MatchOptions().mode(mode).maxPyramidLevel(level));
+                assertAt(result, 210, 120);
+                assertEquals(1.0, result.score, 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void explicitMaskLimitsComparison() {
+        Random random = new Random(8);
+        PixelBuffer frame = frame(random);
+        // Button whose label changes between captures: compare only its border
+        PixelBuffer template = copy(frame.region(150, 60, 64, 32));
+        fillRect(template, 8, 8, 48, 16, 0xFF00FF00);
+        PixelBuffer mask = new PixelBuffer(64, 32, new int[64 * 32]);
+        Arrays.fill(mask.getPixels(), 0xFFFFFFFF);
+        fillRect(mask, 8, 8, 48, 16, 0xFF000000);
+
+        CompiledTemplate masked = CompiledTemplate.of(template, mask);
+        for (MatchMode mode : Arrays.asList(MatchMode.SAD, MatchMode.NCC)) {
+            ImageMatcher.MatchResult result = ImageMatcher.findImage(frame, masked,
+                    new MatchOptions().mode(mode).maxPyramidLevel(0));
+            assertAt(result, 150, 60);
+            assertEquals(1.0, result.score, 1e-6);
+        }
+        // Without the mask the label costs SAD a visible share of the score
+        ImageMatcher.MatchResult unmasked = ImageMatcher.findImage(frame, template,
+                new MatchOptions().maxPyramidLevel(0).threshold(0));
+        assertTrue(unmasked.score < 0.95);
+    }
+
+    @Test
+    public void fullyTransparentTemplateFindsNothing() {
+        PixelBuffer frame = frame(new Random(16));
+        PixelBuffer template = new PixelBuffer(24, 24, new int[24 * 24]);
+
+        assertNull(ImageMatcher.findImage(frame, template, null));
+        assertTrue(ImageMatcher.findAllImages(frame, template, null).isEmpty());
+        assertNull(ImageMatcher.findAll(frame, Arrays.asList(template), null).get(0));
+        assertNull(ImageMatcher.findAny(frame, Arrays.asList(template), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maskExcludingEverythingIsRejected() {
+        PixelBuffer template = icon(16, 16, new Random(9));
+        PixelBuffer mask = new PixelBuffer(16, 16, new int[16 * 16]);
+        CompiledTemplate.of(template, mask);
+    }
+
+    @Test
+    public void parallelScanMatchesSerial() {
+        Random random = new Random(12);
+        PixelBuffer frame = frame(random);
+        List<PixelBuffer> templates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            templates.add(copy(frame.region(random.nextInt(WIDTH - 64), random.nextInt(HEIGHT - 48), 64, 48)));
+        }
+        List<MatchOptions> searches = Arrays.asList(
+                new MatchOptions(),
+                new MatchOptions().maxPyramidLevel(0),
+                new MatchOptions().mode(MatchMode.NCC),
+                new MatchOptions().mode(MatchMode.NCC).maxPyramidLevel(0).backend(MatchOptions.Backend.SPATIAL),
+                new MatchOptions().mode(MatchMode.NCC).maxPyramidLevel(0).backend(MatchOptions.Backend.FFT));
+
+        int threads = SearchPool.parallelism();
+        try {
+            List<Object> serial = new ArrayList<>();
+            List<Object> parallel = new ArrayList<>();
+            for (int run = 0; run < 2; run++) {
+                ImageMatcher.setParallelism(run == 0 ? 1 : 4);
+                List<Object> out = run == 0 ? serial : parallel;
+                for (MatchOptions options : searches) {
+                    for (PixelBuffer template : templates) {
+                        out.add(describe(ImageMatcher.findImage(frame, template, options)));
+                        out.add(describe(ImageMatcher.findAllImages(frame, template, options)));
+                    }
+                }
+            }
+            assertEquals(serial, parallel);
+        } finally {
+            ImageMatcher.setParallelism(threads);
+        }
+    }
+
+    @Test
+    public void earlyAbandonKeepsResults() {
+        Random random = new Random(13);
+        PixelBuffer frame = frame(random);
+        // Scores below 1 everywhere, so the threshold decides what is kept
+        PixelBuffer noisy = copy(frame);
+        int[] pixels = noisy.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = shift(pixels[i], random.nextInt(41) - 20);
+        }
+        for (int i = 0; i < 40; i++) {
+            int w = 16 + random.nextInt(64);
+            int h = 16 + random.nextInt(48);
+            PixelBuffer template = copy(frame.region(random.nextInt(WIDTH - w), random.nextInt(HEIGHT - h), w, h));
+            double threshold = 0.5 + random.nextDouble() * 0.45;
+            int level = i % 2 == 0 ? 0 : 3;
+
+            MatchOptions on = new MatchOptions().threshold(threshold).maxPyramidLevel(level);
+            MatchOptions off = new MatchOptions().threshold(threshold).maxPyramidLevel(level).earlyAbandon(false);
+            assertEquals(describe(ImageMatcher.findImage(noisy, template, off)),
+                    describe(ImageMatcher.findImage(noisy, template, on)));
+            assertEquals(describe(ImageMatcher.findAllImages(noisy, template, off)),
+                    describe(ImageMatcher.findAllImages(noisy, template, on)));
+        }
+    }
+
+    @Test
+    public void cancelledSearchReturnsNothing() {
+        PixelBuffer frame = frame(new Random(14));
+        PixelBuffer template = copy(frame.region(100, 100, 48, 48));
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        for (MatchMode mode : Arrays.asList(MatchMode.SAD, MatchMode.NCC)) {
+            MatchOptions options = new MatchOptions().mode(mode).maxPyramidLevel(0).cancellation(token);
+            assertNull(ImageMatcher.findImage(frame, template, options));
+            assertTrue(ImageMatcher.findAllImages(frame, template, options).isEmpty());
+            assertNull(ImageMatcher.findAll(frame, Arrays.asList(template), options).get(0));
+            assertNull(ImageMatcher.findAny(frame, Arrays.asList(template), options));
+        }
+    }
+
+    @Test
+    public void findAllAndFindAnyMatchSeparateSearches() {
+        Random random = new Random(15);
+        PixelBuffer frame = frame(random);
+        PixelBuffer absent = icon(40, 30, random);
+        List<PixelBuffer> templates = Arrays.asList(absent, copy(frame.region(30, 40, 56, 28)),
+                copy(frame.region(300, 220, 32, 32)), copy(frame.region(200, 10, 96, 48)));
+
+        for (MatchMode mode : Arrays.asList(MatchMode.SAD, MatchMode.NCC)) {
+            MatchOptions options = new MatchOptions().mode(mode).threshold(0.9);
+            List<ImageMatcher.MatchResult> all = ImageMatcher.findAll(frame, templates, options);
+            assertEquals(templates.size(), all.size());
+            assertNull(all.get(0));
+            for (int i = 0; i < templates.size(); i++) {
+                assertEquals(describe(ImageMatcher.findImage(frame, templates.get(i), options)),
+                        describe(all.get(i)));
+                if (all.get(i) != null) {
+                    assertEquals(i, all.get(i).templateIndex);
+                }
+            }
+
+            // The first one found in list order
+            ImageMatcher.MatchResult any = ImageMatcher.findAny(frame, templates, options);
+            assertEquals(describe(all.get(1)), describe(any));
+            assertEquals(1, any.templateIndex);
+        }
+    }
+
+    private static void assertAt(ImageMatcher.MatchResult result, int x, int y) {
+        assertNotNull("no match, expected " + x + "," + y, result);
+        assertEquals("x", x, result.x);
+        assertEquals("y", y, result.y);
+    }
+
+    // Comparable summary of a result, null for no match
+    static String describe(ImageMatcher.MatchResult result) {
+        return result == null ? null
+                : result.x + "," + result.y + " " + result.width + "x" + result.height + " " + result.score
+                + " @" + result.scale;
+    }
+
+    static List<String> describe(List<ImageMatcher.MatchResult> results) {
+        List<String> out = new ArrayList<>();
+        for (ImageMatcher.MatchResult result : results) {
+            out.add(describe(result));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,132 @@
+package com.automation.helper.matcher;
+
+import static com.automation.helper.matcher.TestFrames.copy;
+import static com.automation.helper.matcher.TestFrames.fillRect;
+import static com.automation.helper.matcher.TestFrames.frame;
+import static com.automation.helper.matcher.TestFrames.icon;
+import static com.automation.helper.matcher.TestFrames.paste;
+import static com.automation.helper.matcher.TestFrames.shift;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class MatchCacheTest {
+    // Pure red and a green of the same luma
+    private static final int RED = 0xFFFF0000;
+    private static final int GREEN = 0xFF008200;
+
+    @Test
+    public void unchangedFrameIsReused() {
+        PixelBuffer frame = frame(new Random(21));
+        CompiledTemplate template = CompiledTemplate.of(copy(frame.region(120, 90, 48, 40)));
+        MatchCache cache = new MatchCache();
+
+        ImageMatcher.MatchResult first = cache.findImage(frame, template, null);
+        ImageMatcher.MatchResult second = cache.findImage(copy(frame), template, null);
+
+        assertEquals(ImageMatcherTest.describe(first), ImageMatcherTest.describe(second));
+        assertEquals(1, cache.getSearched());
+        assertEquals(1, cache.getReused());
+        // Different options are a different search
+        cache.findImage(frame, template, new MatchOptions().mode(MatchMode.NCC));
+        assertEquals(2, cache.getSearched());
+    }
+
+    @Test
+    public void changeAwayFromTargetIsRescannedOnly() {
+        PixelBuffer frame = frame(new Random(22));
+        CompiledTemplate template = CompiledTemplate.of(copy(frame.region(40, 40, 48, 40)));
+        MatchCache cache = new MatchCache();
+        ImageMatcher.MatchResult first = cache.findImage(frame, template, null);
+
+        // A status-bar clock ticking on the far side of the screen
+        PixelBuffer ticked = copy(frame);
+        fillRect(ticked, 400, 8, 60, 16, 0xFF202020);
+        ImageMatcher.MatchResult second = cache.findImage(ticked, template, null);
+
+        assertEquals(ImageMatcherTest.describe(first), ImageMatcherTest.describe(second));
+        assertEquals(1, cache.getSearched());
+        assertEquals(1, cache.getRescanned());
+    }
+
+    @Test
+    public void targetAppearingInChangedTilesIsFound() {
+        Random random = new Random(23);
+        PixelBuffer frame = frame(random);
+        PixelBuffer button = icon(40, 32, random);
+        CompiledTemplate template = CompiledTemplate.of(button);
+        MatchOptions options = new MatchOptions().threshold(0.95);
+        MatchCache cache = new MatchCache();
+        assertNull(cache.findImage(frame, template, options));
+
+        PixelBuffer shown = copy(frame);
+        paste(shown, button, 350, 210);
+        ImageMatcher.MatchResult found = cache.findImage(shown, template, options);
+
+        assertNotNull(found);
+        assertEquals(350, found.x);
+        assertEquals(210, found.y);
+        assertEquals(1, cache.getRescanned());
+    }
+
+    @Test
+    public void cachedResultsMatchFullSearches() {
+        Random random = new Random(24);
+        PixelBuffer frame = frame(random);
+        PixelBuffer button = icon(40, 32, random);
+        paste(frame, button, 200, 150);
+        int[] at = { 200, 150 };
+        CompiledTemplate template = CompiledTemplate.of(button);
+        MatchCache sad = new MatchCache();
+        MatchCache ncc = new MatchCache();
+
+        for (int i = 0; i < 30; i++) {
+            // Each poll edits the screen somewhere, now and then moving the button
+            frame = copy(frame);
+            int[] pixels = frame.getPixels();
+            int x0 = random.nextInt(TestFrames.WIDTH - 40);
+            int y0 = random.nextInt(TestFrames.HEIGHT - 32);
+            if (i % 5 == 4) {
+                fillRect(frame, at[0], at[1], 40, 32, 0xFF808080);
+                paste(frame, button, x0, y0);
+                at = new int[] { x0, y0 };
+            } else {
+                for (int y = y0; y < y0 + 20; y++) {
+                    for (int x = x0; x < x0 + 30; x++) {
+                        pixels[y * frame.getWidth() + x] = shift(pixels[y * frame.getWidth() + x], 60);
+                    }
+                }
+            }
+            for (MatchCache cache : new MatchCache[] { sad, ncc }) {
+                MatchOptions options = new MatchOptions().mode(cache == sad ? MatchMode.SAD : MatchMode.NCC);
+                assertEquals("poll " + i + " " + options.getMode(),
+                        ImageMatcherTest.describe(ImageMatcher.findImage(frame, template, options)),
+                        ImageMatcherTest.describe(cache.findImage(frame, template, options)));
+            }
+        }
+        // Most polls only rescan the edit
+        assertTrue(sad.getRescanned() > sad.getSearched());
+        assertTrue(ncc.getRescanned() > ncc.getSearched());
+    }
+
+    @Test
+    public void colourChangeAtSameLumaIsNotReused() {
+        assertEquals(GrayImage.luma(RED), GrayImage.luma(GREEN));
+        PixelBuffer frame = frame(new Random(20));
+        fillRect(frame, 200, 100, 64, 32, 0xFF202020);
+        fillRect(frame, 204, 104, 56, 24, RED);
+        CompiledTemplate button = CompiledTemplate.of(copy(frame.region(200, 100, 64, 32)));
+        MatchCache cache = new MatchCache();
+
+        assertNotNull(cache.findImage(frame, button, null));
+        PixelBuffer recoloured = copy(frame);
+        fillRect(recoloured, 204, 104, 56, 24, GREEN);
+
+        assertNull(cache.findImage(recoloured, button, null));
+        assertEquals(0, cache.getReused());
+    }
+}
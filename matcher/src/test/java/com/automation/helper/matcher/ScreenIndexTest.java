@@ -0,0 +1,97 @@
+package com.automation.helper.matcher;
+
+import static com.automation.helper.matcher.TestFrames.copy;
+import static com.automation.helper.matcher.TestFrames.fillRect;
+import static com.automation.helper.matcher.TestFrames.frame;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ScreenIndexTest {
+    @Test
+    public void lookupsMatchLinearScan() {
+        Random random = new Random(30);
+        List<long[]> screens = new ArrayList<>();
+        ScreenIndex<Integer> index = new ScreenIndex<>();
+        for (int i = 0; i < 500; i++) {
+            // Some screens are near-duplicates of earlier ones
+            long[] hash = i > 0 && i % 4 == 0 ? flip(screens.get(random.nextInt(i)), 1 + random.nextInt(20), random)
+                    : randomHash(random);
+            screens.add(hash);
+            index.add(hash, i);
+        }
+
+        for (int q = 0; q < 300; q++) {
+            long[] query = flip(screens.get(random.nextInt(screens.size())), random.nextInt(40), random);
+            for (int maxDistance : new int[] { 0, 4, 15, 16, 40 }) {
+                List<String> expected = new ArrayList<>();
+                int closest = Integer.MAX_VALUE;
+                for (int i = 0; i < screens.size(); i++) {
+                    int distance = ScreenHash.distance(query, screens.get(i));
+                    if (distance <= maxDistance) {
+                        expected.add(distance + ":" + i);
+                        closest = Math.min(closest, distance);
+                    }
+                }
+                List<String> actual = new ArrayList<>();
+                int previous = -1;
+                for (ScreenIndex.Match<Integer> match : index.within(query, maxDistance)) {
+                    assertTrue("closest first", match.distance >= previous);
+                    previous = match.distance;
+                    actual.add(match.distance + ":" + match.value);
+                }
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertEquals("within " + maxDistance, expected, actual);
+
+                ScreenIndex.Match<Integer> nearest = index.nearest(query, maxDistance);
+                if (expected.isEmpty()) {
+                    assertNull(nearest);
+                } else {
+                    assertEquals(closest, nearest.distance);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameScreenHashesClose() {
+        PixelBuffer screen = frame(new Random(31));
+        PixelBuffer other = frame(new Random(32));
+        // Same screen with another clock time
+        PixelBuffer later = copy(screen);
+        fillRect(later, 420, 4, 40, 12, 0xFF303030);
+
+        long[] hash = ScreenHash.of(screen);
+        assertTrue(ScreenHash.distance(hash, ScreenHash.of(later)) <= 8);
+        assertTrue(ScreenHash.distance(hash, ScreenHash.of(other)) >= 40);
+    }
+
+    private static long[] randomHash(Random random) {
+        long[] hash = new long[ScreenHash.LONGS];
+        for (int i = 0; i < hash.length; i++) {
+            hash[i] = random.nextLong();
+        }
+        return hash;
+    }
+
+    // hash with bits distinct bits inverted
+    private static long[] flip(long[] hash, int bits, Random random) {
+        long[] flipped = hash.clone();
+        int done = 0;
+        while (done < bits) {
+            int bit = random.nextInt(ScreenHash.BITS);
+            if (((flipped[bit >> 6] ^ hash[bit >> 6]) & 1L << (bit & 63)) == 0) {
+                flipped[bit >> 6] ^= 1L << (bit & 63);
+                done++;
+            }
+        }
+        return flipped;
+    }
+}
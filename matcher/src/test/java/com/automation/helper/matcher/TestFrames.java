@@ -0,0 +1,79 @@
+package com.automation.helper.matcher;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Synthetic screens for the matcher tests
+final class TestFrames {
+    static final int WIDTH = 480;
+    static final int HEIGHT = 320;
+
+    private TestFrames() {}
+
+    // Flat background with coloured boxes and per-pixel noise, like a busy screen
+    static PixelBuffer frame(Random random) {
+        return frame(WIDTH, HEIGHT, random);
+    }
+
+    static PixelBuffer frame(int width, int height, Random random) {
+        PixelBuffer frame = new PixelBuffer(width, height, new int[width * height]);
+        Arrays.fill(frame.getPixels(), 0xFFF0F0F0);
+        int boxes = width * height / 1280;
+        for (int i = 0; i < boxes; i++) {
+            int w = 8 + random.nextInt(80);
+            int h = 6 + random.nextInt(40);
+            fillRect(frame, random.nextInt(width - w), random.nextInt(height - h), w, h,
+                    0xFF000000 | random.nextInt(0x1000000));
+        }
+        int[] pixels = frame.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = shift(pixels[i], random.nextInt(13) - 6);
+        }
+        return frame;
+    }
+
+    static PixelBuffer icon(int width, int height, Random random) {
+        PixelBuffer icon = new PixelBuffer(width, height, new int[width * height]);
+        Arrays.fill(icon.getPixels(), 0xFF1E63C8);
+        for (int i = 0; i < 16; i++) {
+            fillRect(icon, random.nextInt(width - 4), random.nextInt(height - 4), 4, 4,
+                    0xFF000000 | random.nextInt(0x1000000));
+        }
+        return icon;
+    }
+
+    static int shift(int argb, int delta) {
+        int r = clamp(((argb >> 16) & 0xFF) + delta);
+        int g = clamp(((argb >> 8) & 0xFF) + delta);
+        int b = clamp((argb & 0xFF) + delta);
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+
+    static void fillRect(PixelBuffer image, int x0, int y0, int w, int h, int argb) {
+        for (int y = y0; y < y0 + h; y++) {
+            Arrays.fill(image.getPixels(), y * image.getWidth() + x0, y * image.getWidth() + x0 + w, argb);
+        }
+    }
+
+    static void paste(PixelBuffer target, PixelBuffer image, int x0, int y0) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            System.arraycopy(image.getPixels(), y * image.getWidth(),
+                    target.getPixels(), (y0 + y) * target.getWidth() + x0, image.getWidth());
+        }
+    }
+
+    static PixelBuffer copy(PixelBuffer region) {
+        int width = region.getWidth();
+        int height = region.getHeight();
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(region.getPixels(), region.getOffset() + y * region.getStride(),
+                    pixels, y * width, width);
+        }
+        return new PixelBuffer(width, height, pixels);
+    }
+}